@@ -1,15 +1,26 @@
 package ascii_art;
 
 import image.Image;
+import image.StreamedImage;
 import image_char_matching.SubImgCharMatcher;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
 
+import static image.ImageToBrightnessesFacade.greyBrightnessesByResolution;
 import static java.lang.Math.*;
 
 /**
  * The AlgorithmParameters class holds parameters and methods related to ASCII art generation algorithms. It provides
  * functionality for setting resolution, loading images, and accessing character matchers.
+ * <p>
+ * Images and the character matcher are loaded on background threads, so that the shell can prompt the user at once
+ * and stays responsive while a new image is decoded. The methods needing either of them wait for its loading to
+ * finish.
  */
 public class AlogithmParameters {
     //region STATIC VARIABLES
@@ -39,6 +50,21 @@ public class AlogithmParameters {
      * The minimum power used for calculating the highest power of 2.
      */
     private static final int MIN_POW = 1;
+
+    /**
+     * The name of the background threads loading images and character matchers.
+     */
+    private static final String LOADER_THREAD_NAME = "ascii-art-loader";
+
+    /**
+     * The background threads loading images and character matchers. They are daemon threads, so a pending load does
+     * not keep the program from exiting.
+     */
+    private static final ExecutorService LOADER = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, LOADER_THREAD_NAME);
+        thread.setDaemon(true);
+        return thread;
+    });
     //endregion
 
 
@@ -46,7 +72,7 @@ public class AlogithmParameters {
     /**
      * The character matcher used for matching sub-images to ASCII characters.
      */
-    private final SubImgCharMatcher charMatcher;
+    private CompletableFuture<SubImgCharMatcher> charMatcher;
 
     /**
      * The resolution for image processing.
@@ -54,9 +80,19 @@ public class AlogithmParameters {
     private int resolution;
 
     /**
-     * The image being processed.
+     * The image being processed, possibly still loading.
+     */
+    private CompletableFuture<LoadedImage> loadedImage;
+
+    /**
+     * Whether images are loaded without decoding them and rendered from a subsampled decode.
      */
-    private Image image;
+    private boolean fastMode;
+
+    /**
+     * Whether tiles are matched to characters by shape as well as by brightness.
+     */
+    private boolean shapeMode;
 
     //endregion
 
@@ -64,18 +100,14 @@ public class AlogithmParameters {
     //region API
 
     /**
-     * Constructs an AlgorithmParameters instance with default settings.
-     *
-     * @throws IOException if an error occurs while loading the default image.
+     * Constructs an AlgorithmParameters instance with default settings. The default image and the character matcher
+     * start loading in the background, and an error loading the default image is reported when the image is first
+     * needed.
      */
-    AlogithmParameters() throws IOException {
-        try {
-            this.image = openImage(DEFAULT_PATH);
-        } catch (IOException e) {
-            throw new IOException(e);
-        }
+    AlogithmParameters() {
         resolution = DEFAUL_RESOLUTION;
-        charMatcher = new SubImgCharMatcher(INIT_CHARS);
+        loadedImage = loadImageAsync(DEFAULT_PATH, null);
+        charMatcher = CompletableFuture.supplyAsync(() -> new SubImgCharMatcher(INIT_CHARS), LOADER);
     }
 
 
@@ -83,9 +115,10 @@ public class AlogithmParameters {
      * Increases the resolution by a factor of 2 if possible.
      *
      * @return true if the resolution is successfully increased, false otherwise.
+     * @throws IOException if the current image could not be loaded.
      */
-    boolean resUp() {
-        if (resolution * BASE_TWO > getHighestPow2(image.getWidth())) {
+    boolean resUp() throws IOException {
+        if (resolution * BASE_TWO > maxResolution(getImageWidth())) {
             return false;
         }
         resolution *= BASE_TWO;
@@ -96,10 +129,10 @@ public class AlogithmParameters {
      * Decreases the resolution by a factor of 2 if possible.
      *
      * @return true if the resolution is successfully decreased, false otherwise.
+     * @throws IOException if the current image could not be loaded.
      */
-    boolean resDown() {
-        if (resolution / BASE_TWO < max(MIN_POW,
-                getHighestPow2(image.getWidth()) / getHighestPow2(image.getHeight()))) {
+    boolean resDown() throws IOException {
+        if (resolution / BASE_TWO < minResolution(getImageWidth(), getImageHeight())) {
             return false;
         }
         resolution /= BASE_TWO;
@@ -107,17 +140,60 @@ public class AlogithmParameters {
     }
 
     /**
-     * Updates the current image with a new image loaded from the specified path.
+     * Updates the current image with a new image loaded from the specified path. Only the header of the file is read
+     * before returning; the image is decoded in the background, and the load of the previous image is cancelled if it
+     * is still pending. If the header cannot be read, the current image is kept.
      *
      * @param path the path to the new image file.
-     * @throws IOException if an error occurs while loading the new image.
+     * @throws IOException if an error occurs while reading the header of the new image.
      */
     void updateImage(String path) throws IOException {
+        StreamedImage header;
         try {
-            image = openImage(path);
+            header = StreamedImage.open(path);
         } catch (IOException e) {
             throw new IOException(e);
         }
+        loadedImage.cancel(false);
+        loadedImage = loadImageAsync(path, header);
+    }
+
+    /**
+     * Turns the fast mode on or off. In fast mode, images loaded afterwards are not decoded up front, and their
+     * brightness is estimated by decoding only as many samples as the tile grid of the current resolution needs.
+     *
+     * @param fastMode true to turn the fast mode on, false to turn it off.
+     */
+    void setFastMode(boolean fastMode) {
+        this.fastMode = fastMode;
+    }
+
+    /**
+     * Checks whether the fast mode is on.
+     *
+     * @return true if the fast mode is on.
+     */
+    boolean isFastMode() {
+        return fastMode;
+    }
+
+    /**
+     * Turns the shape mode on or off. In shape mode, each tile is matched to the character whose rendering looks most
+     * like the tile among the characters of similar brightness, instead of by brightness only.
+     *
+     * @param shapeMode true to turn the shape mode on, false to turn it off.
+     */
+    void setShapeMode(boolean shapeMode) {
+        this.shapeMode = shapeMode;
+    }
+
+    /**
+     * Checks whether the shape mode is on.
+     *
+     * @return true if the shape mode is on.
+     */
+    boolean isShapeMode() {
+        return shapeMode;
     }
 
     /**
@@ -130,21 +206,107 @@ public class AlogithmParameters {
     }
 
     /**
-     * Gets the current image being processed.
+     * Gets the current image being processed, waiting for it to be loaded. An image whose brightness values were
+     * found in a cache when it was loaded is not decoded until this is called.
+     *
+     * @return the current image, or null if it is too large to be decoded in memory and is streamed instead.
+     * @throws IOException if the current image could not be loaded.
+     */
+    Image getImage() throws IOException {
+        return awaitImage().image();
+    }
+
+    /**
+     * Gets the file of the current image being processed, waiting for it to be loaded, whether the image is decoded
+     * in memory or streamed. Its fingerprint is the key of the image in the brightness caches.
      *
-     * @return the current image.
+     * @return the header of the image file.
+     * @throws IOException if the current image could not be loaded.
      */
-    Image getImage() {
-        return image;
+    StreamedImage getImageFile() throws IOException {
+        return awaitImage().header();
     }
 
     /**
-     * Gets the character matcher used for matching sub-images to ASCII characters.
+     * Gets the current image being processed when it is too large to be decoded in memory, waiting for it to be
+     * loaded.
+     *
+     * @return the streamed image, or null if the current image is decoded in memory.
+     * @throws IOException if the current image could not be loaded.
+     */
+    StreamedImage getStreamedImage() throws IOException {
+        return awaitImage().streamedImage();
+    }
+
+    /**
+     * Gets the character matcher used for matching sub-images to ASCII characters, waiting for it to be built.
      *
      * @return the character matcher.
      */
     SubImgCharMatcher getCharMatcher() {
-        return charMatcher;
+        return charMatcher.join();
+    }
+
+    /**
+     * Renders the characters of the charset in another font or pixel size from now on, keeping the same characters.
+     *
+     * @param fontName        the name of the font.
+     * @param glyphResolution the pixel size of the rendered characters.
+     */
+    void setGlyphStyle(String fontName, int glyphResolution) {
+        charMatcher = CompletableFuture.completedFuture(getCharMatcher().withGlyphStyle(fontName, glyphResolution));
+    }
+
+    /**
+     * Gets the name of the font the characters are rendered in.
+     *
+     * @return the font name.
+     */
+    String getFontName() {
+        return getCharMatcher().getFontName();
+    }
+
+    /**
+     * Gets the pixel size the characters are rendered at.
+     *
+     * @return the glyph resolution.
+     */
+    int getGlyphResolution() {
+        return getCharMatcher().getGlyphResolution();
+    }
+
+    /**
+     * Gets the highest resolution an image can be divided at: one tile per column of the padded image. The res
+     * commands, the batch converter and the animation converter share these bounds.
+     *
+     * @param width the width of the image in pixels.
+     * @return the highest resolution.
+     */
+    static int maxResolution(int width) {
+        return getHighestPow2(width);
+    }
+
+    /**
+     * Gets the lowest resolution an image can be divided at: at least one row of tiles.
+     *
+     * @param width  the width of the image in pixels.
+     * @param height the height of the image in pixels.
+     * @return the lowest resolution.
+     */
+    static int minResolution(int width, int height) {
+        return max(MIN_POW, getHighestPow2(width) / getHighestPow2(height));
+    }
+
+    /**
+     * Checks whether an image can be divided at a resolution, with the bounds of the res commands.
+     *
+     * @param width      the width of the image in pixels.
+     * @param height     the height of the image in pixels.
+     * @param resolution the resolution.
+     * @return true if the image can be divided at the resolution.
+     */
+    static boolean fitsResolution(int width, int height, int resolution) {
+        return resolution <= maxResolution(width) && resolution >= minResolution(width, height);
     }
 
     //endregion
@@ -158,25 +320,172 @@ public class AlogithmParameters {
      * @param num the input number.
      * @return the highest power of 2 less than or equal to the input number.
      */
-    private int getHighestPow2(int num) {
+    private static int getHighestPow2(int num) {
         return MIN_POW << (int) Math.ceil(Math.log(num) / Math.log(BASE_TWO));
     }
 
     /**
-     * Opens an image file located at the specified path.
+     * Gets the width of the current image, waiting for it to be loaded.
+     *
+     * @return the width in pixels.
+     * @throws IOException if the current image could not be loaded.
+     */
+    private int getImageWidth() throws IOException {
+        return awaitImage().header().getWidth();
+    }
+
+    /**
+     * Gets the height of the current image, waiting for it to be loaded.
+     *
+     * @return the height in pixels.
+     * @throws IOException if the current image could not be loaded.
+     */
+    private int getImageHeight() throws IOException {
+        return awaitImage().header().getHeight();
+    }
+
+    /**
+     * Waits for the current image to be loaded.
      *
-     * @param path the path to the image file.
      * @return the loaded image.
-     * @throws IOException if an error occurs while loading the image.
+     * @throws IOException if the current image could not be loaded.
      */
-    private Image openImage(String path) throws IOException {
-        Image image;
+    private LoadedImage awaitImage() throws IOException {
         try {
-            image = new Image(path);
-        } catch (IOException e) {
-            throw new IOException(e);
+            return loadedImage.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw new IOException(ioException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts loading an image on a background thread. The file content is hashed first, and if the brightness values
+     * of the file at the current resolution are in a cache, the image is not decoded at all. Otherwise, once the image
+     * is decoded, its brightness values at the current resolution are precomputed into the caches, so that the next
+     * run of the algorithm, in this process or a later one, finds them ready. A cancelled load stops at its next step,
+     * and the decode itself stops early. Any failure of the load, not only an I/O error, completes it exceptionally,
+     * so that waiting for it never blocks forever.
+     *
+     * @param path   the path to the image file.
+     * @param header the header of the image file if it is already read, or null to read it in the background.
+     * @return the image being loaded.
+     */
+    private CompletableFuture<LoadedImage> loadImageAsync(String path, StreamedImage header) {
+        CompletableFuture<LoadedImage> load = new CompletableFuture<>();
+        boolean decode = !fastMode;
+        int precomputedResolution = resolution;
+        LOADER.execute(() -> {
+            try {
+                StreamedImage opened = header != null ? header : StreamedImage.open(path);
+                if (load.isCancelled()) {
+                    return;
+                }
+                LoadedImage loaded = new LoadedImage(opened, !decode || !opened.fitsInMemory());
+                // The content fingerprint is the cache key of the file, so it is always computed here.
+                long fingerprint = opened.getFingerprint();
+                if (load.isCancelled()) {
+                    return;
+                }
+                if (!loaded.isStreamed() &&
+                        fitsResolution(opened.getWidth(), opened.getHeight(), precomputedResolution) &&
+                        AsciiArtAlgorithm.getCachedBrightnesses(fingerprint, precomputedResolution, false) == null) {
+                    AsciiArtAlgorithm.cacheBrightnesses(fingerprint, precomputedResolution, false,
+                            greyBrightnessesByResolution(loaded.decode(load::isCancelled), precomputedResolution));
+                }
+                load.complete(loaded);
+            } catch (Throwable e) {
+                load.completeExceptionally(e);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * An opened image file. The image is decoded in memory when it fits comfortably in the heap and the fast mode was
+     * off when loading started, and is otherwise kept as a streamed image whose brightness is computed band by band.
+     * An image decoded in memory is only decoded once it is needed, which it is not when its brightness values are
+     * found in a cache.
+     */
+    private static final class LoadedImage {
+        /**
+         * The header of the image file, present whether or not the image is decoded.
+         */
+        private final StreamedImage header;
+
+        /**
+         * Whether the image is streamed rather than decoded in memory.
+         */
+        private final boolean streamed;
+
+        /**
+         * The decoded image, or null while it is not decoded or when the image is streamed.
+         */
+        private Image image;
+
+        /**
+         * Constructs an opened image file.
+         *
+         * @param header   the header of the image file.
+         * @param streamed whether the image is streamed rather than decoded in memory.
+         */
+        LoadedImage(StreamedImage header, boolean streamed) {
+            this.header = header;
+            this.streamed = streamed;
+        }
+
+        /**
+         * Gets the header of the image file.
+         *
+         * @return the header.
+         */
+        StreamedImage header() {
+            return header;
+        }
+
+        /**
+         * Checks whether the image is streamed rather than decoded in memory.
+         *
+         * @return true if the image is streamed.
+         */
+        boolean isStreamed() {
+            return streamed;
+        }
+
+        /**
+         * Gets the decoded image, decoding it on the first call.
+         *
+         * @return the decoded image, or null when the image is streamed.
+         * @throws IOException if the image cannot be decoded.
+         */
+        Image image() throws IOException {
+            return decode(() -> false);
+        }
+
+        /**
+         * Gets the decoded image, decoding it on the first call unless the decode is abandoned.
+         *
+         * @param cancelled the condition under which the decode is abandoned.
+         * @return the decoded image, or null when the image is streamed.
+         * @throws IOException if the image cannot be decoded.
+         */
+        synchronized Image decode(BooleanSupplier cancelled) throws IOException {
+            if (image == null && !streamed) {
+                image = header.decode(cancelled);
+            }
+            return image;
+        }
+
+        /**
+         * Gets the image to stream, or null when the image is decoded in memory.
+         *
+         * @return the streamed image.
+         */
+        StreamedImage streamedImage() {
+            return streamed ? header : null;
         }
-        return image;
     }
 
     //endregion
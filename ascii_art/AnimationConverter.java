@@ -0,0 +1,370 @@
+package ascii_art;
+
+import image.FrameDeltaTracker;
+import image.FrameSequence;
+import image.Image;
+import image_char_matching.CharConverter;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders an animation, a directory of numbered frames or an animated GIF, to ASCII art frames, as a separate entry
+ * point from the shell. The frames are played on the console, each one drawn over the previous one, or written to an
+ * output directory as {@code frame-<number>.txt}.
+ * <p>
+ * Consecutive frames mostly differ in a few tiles, so instead of running the whole algorithm on each frame, the
+ * brightness grid and the ASCII art of the previous frame are kept: only the tiles whose pixels changed get their
+ * brightness recomputed (see {@link FrameDeltaTracker}) and are matched to a character again. The next frame is
+ * decoded while the current one is converted. At the end, the number of frames per second is printed, along with the
+ * share of the cells that were matched again.
+ * <p>
+ * Usage: {@code AnimationConverter <directory|gif> [-r res] [-c chars,...] [-o dir] [--font name]}, with the charset
+ * items of the batch converter.
+ */
+public class AnimationConverter {
+    //region CONSTANT VARIABLES
+    /**
+     * Option setting the resolution.
+     */
+    private static final String RESOLUTION_OPTION = "-r";
+
+    /**
+     * Option setting the charset.
+     */
+    private static final String CHARS_OPTION = "-c";
+
+    /**
+     * Option setting the output directory; without it, the frames are played on the console.
+     */
+    private static final String OUTPUT_OPTION = "-o";
+
+    /**
+     * Option setting the font the characters are rendered in.
+     */
+    private static final String FONT_OPTION = "--font";
+
+    /**
+     * The default resolution, the one the shell starts with.
+     */
+    private static final int DEFAULT_RESOLUTION = 128;
+
+    /**
+     * The default charset, the one the shell starts with.
+     */
+    private static final String DEFAULT_CHARS = "0-9";
+
+    /**
+     * The format of an output file name, from the index of the frame.
+     */
+    private static final String FRAME_NAME_FORMAT = "frame-%05d.txt";
+
+    /**
+     * The terminal sequence moving the cursor to the top left corner, to draw a frame over the previous one.
+     */
+    private static final String CURSOR_HOME = "\033[H";
+
+    /**
+     * The terminal sequence clearing the screen, before the first frame.
+     */
+    private static final String CLEAR_SCREEN = "\033[2J";
+
+    /**
+     * The name of the thread decoding the frames.
+     */
+    private static final String DECODER_THREAD_NAME = "ascii-art-frame-decoder";
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The factor converting a fraction to a percentage.
+     */
+    private static final double PERCENT = 100;
+
+    /**
+     * Format of the final report: frames, seconds, frames per second, frames per second without the time spent
+     * waiting for decoding, and the percentage of cells matched again.
+     */
+    private static final String REPORT_FORMAT =
+            "Rendered %d frames in %.2f s: %.1f frames/s (%.1f frames/s converting), %.1f%% of the cells re-matched.";
+
+    /**
+     * Message printed for invalid arguments.
+     */
+    private static final String USAGE =
+            "Usage: AnimationConverter <directory|gif> [-r res] [-c chars,...] [-o dir] [--font name]";
+
+    /**
+     * Message printed when the resolution does not fit the frames.
+     */
+    private static final String RES_OUT_OF_BOUNDS = "Did not execute due to exceeding boundaries.";
+
+    /**
+     * The smallest resolution.
+     */
+    private static final int MIN_POW = 1;
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The resolution of the ASCII art.
+     */
+    private final int resolution;
+
+    /**
+     * The charset, shared by all the frames.
+     */
+    private final SubImgCharMatcher.Snapshot charset;
+
+    /**
+     * The directory the frames are written to, or null to play them on the console.
+     */
+    private final Path outputDirectory;
+
+    /**
+     * The brightness grid of the frames, updated from frame to frame.
+     */
+    private final FrameDeltaTracker tracker;
+
+    /**
+     * The ASCII art of the previous frame, updated in place, or null before the first frame or after a change of
+     * frame size.
+     */
+    private char[][] asciiArt;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Constructs a converter.
+     *
+     * @param resolution      the resolution of the ASCII art, a power of 2.
+     * @param charset         the charset, which must not be empty.
+     * @param outputDirectory the directory the frames are written to, or null to play them on the console.
+     */
+    AnimationConverter(int resolution, SubImgCharMatcher.Snapshot charset, Path outputDirectory) {
+        this.resolution = resolution;
+        this.charset = charset;
+        this.outputDirectory = outputDirectory;
+        this.tracker = new FrameDeltaTracker(resolution);
+    }
+
+    /**
+     * Converts the frames of a sequence, then prints the number of frames per second.
+     *
+     * @param frames the frame sequence.
+     * @throws IOException if a frame cannot be decoded or written.
+     */
+    void convert(FrameSequence frames) throws IOException {
+        if (outputDirectory != null) {
+            Files.createDirectories(outputDirectory);
+        }
+        ExecutorService decoder = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, DECODER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        PrintStream console = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        long convertingNanos = 0;
+        long cells = 0;
+        long rematched = 0;
+        int frameIndex = 0;
+        try {
+            CompletableFuture<Image> next = CompletableFuture.supplyAsync(() -> decode(frames), decoder);
+            Image frame;
+            while ((frame = awaitFrame(next)) != null) {
+                next = CompletableFuture.supplyAsync(() -> decode(frames), decoder);
+                long convertStart = System.nanoTime();
+                if (!fits(frame)) {
+                    console.println(RES_OUT_OF_BOUNDS);
+                    return;
+                }
+                rematched += convertFrame(frame);
+                cells += (long) asciiArt.length * asciiArt[0].length;
+                convertingNanos += System.nanoTime() - convertStart;
+                output(console, frameIndex++);
+            }
+        } finally {
+            decoder.shutdownNow();
+            console.flush();
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        console.println(String.format(REPORT_FORMAT, frameIndex, seconds, frameIndex / seconds,
+                frameIndex / (convertingNanos / NANOS_PER_SECOND), cells == 0 ? 0 : PERCENT * rematched / cells));
+        console.flush();
+    }
+
+    /**
+     * The entry point of the animation conversion.
+     *
+     * @param args the input and the options, see the class documentation.
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        String input = null;
+        for (int i = 0; i < args.length; i++) {
+            if (isOption(args[i]) && i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            } else if (input == null && !args[i].startsWith("-")) {
+                input = args[i];
+            } else {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (input == null) {
+            System.out.println(USAGE);
+            return;
+        }
+        try {
+            int resolution = Integer.parseInt(options.getOrDefault(RESOLUTION_OPTION,
+                    Integer.toString(DEFAULT_RESOLUTION)));
+            if (resolution < MIN_POW || Integer.bitCount(resolution) != 1) {
+                System.out.println(USAGE);
+                return;
+            }
+            SubImgCharMatcher charMatcher = new SubImgCharMatcher(new char[0],
+                    options.getOrDefault(FONT_OPTION, CharConverter.DEFAULT_FONT_NAME),
+                    CharConverter.DEFAULT_PIXEL_RESOLUTION);
+            if (!BatchConverter.addChars(charMatcher, options.getOrDefault(CHARS_OPTION, DEFAULT_CHARS))) {
+                System.out.println(ShellConstant.INVALID_ADD_REQUEST);
+                return;
+            }
+            if (charMatcher.getSnapshot().isEmpty()) {
+                System.out.println(ShellConstant.EMPTY_CHARSET_MESSAGE);
+                return;
+            }
+            String output = options.get(OUTPUT_OPTION);
+            try (FrameSequence frames = FrameSequence.open(Path.of(input))) {
+                new AnimationConverter(resolution, charMatcher.getSnapshot(),
+                        output == null ? null : Path.of(output)).convert(frames);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println(USAGE);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println(ShellConstant.IO_EXPECTION);
+        }
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Updates the ASCII art to a new frame, matching again only the cells whose tiles changed.
+     *
+     * @param frame the frame.
+     * @return the number of cells matched again.
+     */
+    private int convertFrame(Image frame) {
+        int changedTiles = tracker.update(frame);
+        float[][] brightnesses = tracker.getBrightnesses();
+        if (asciiArt == null || asciiArt.length != brightnesses.length) {
+            asciiArt = AsciiArtAlgorithm.matchBrightness(brightnesses, charset);
+            return asciiArt.length * asciiArt[0].length;
+        }
+        for (int i = 0; i < brightnesses.length && changedTiles > 0; i++) {
+            for (int j = 0; j < brightnesses[i].length; j++) {
+                if (tracker.isChanged(i, j)) {
+                    asciiArt[i][j] = charset.getCharByImageBrightness(brightnesses[i][j]);
+                }
+            }
+        }
+        return changedTiles;
+    }
+
+    /**
+     * Writes the ASCII art of the current frame to its file, or draws it on the console over the previous frame.
+     *
+     * @param console    the console.
+     * @param frameIndex the index of the frame.
+     * @throws IOException if the file cannot be written.
+     */
+    private void output(PrintStream console, int frameIndex) throws IOException {
+        StringBuilder text = new StringBuilder(asciiArt.length * (asciiArt[0].length + 1) + CLEAR_SCREEN.length());
+        if (outputDirectory == null) {
+            text.append(frameIndex == 0 ? CURSOR_HOME + CLEAR_SCREEN : CURSOR_HOME);
+        }
+        for (char[] row : asciiArt) {
+            text.append(row).append(System.lineSeparator());
+        }
+        if (outputDirectory == null) {
+            console.print(text);
+        } else {
+            Files.writeString(outputDirectory.resolve(String.format(FRAME_NAME_FORMAT, frameIndex)), text,
+                    StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Checks whether the resolution fits a frame, with the bounds of the shell's resolution commands.
+     *
+     * @param frame the frame.
+     * @return true if the frame can be converted at the resolution.
+     */
+    private boolean fits(Image frame) {
+        return AlogithmParameters.fitsResolution(frame.getWidth(), frame.getHeight(), resolution);
+    }
+
+    /**
+     * Decodes the next frame, on the decoding thread.
+     *
+     * @param frames the frame sequence.
+     * @return the next frame, or null after the last one.
+     * @throws CompletionException if the frame cannot be decoded.
+     */
+    private static Image decode(FrameSequence frames) {
+        try {
+            return frames.next();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Waits for a frame being decoded.
+     *
+     * @param frame the frame being decoded.
+     * @return the frame, or null after the last one.
+     * @throws IOException if the frame could not be decoded.
+     */
+    private static Image awaitFrame(CompletableFuture<Image> frame) throws IOException {
+        try {
+            return frame.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether an argument is one of the options taking a value.
+     *
+     * @param option the argument.
+     * @return true if it is a known option.
+     */
+    private static boolean isOption(String option) {
+        return option.equals(RESOLUTION_OPTION) || option.equals(CHARS_OPTION) || option.equals(OUTPUT_OPTION) ||
+                option.equals(FONT_OPTION);
+    }
+    //endregion
+}
@@ -1,12 +1,15 @@
 package ascii_art;
 
-import image.Image;
 import image.ImageToBrightnessesFacade;
+import image.StreamedImage;
+import image_char_matching.SubImgCharMatcher;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Path;
 
 import static image.ImageToBrightnessesFacade.greyBrightnessesByResolution;
+import static image.ImageToBrightnessesFacade.greyBrightnessesBySubsampling;
+import static image.ImageToBrightnessesFacade.tileMasksByResolution;
 import static java.util.Objects.hash;
 
 /**
@@ -16,9 +19,41 @@ import static java.util.Objects.hash;
 public class AsciiArtAlgorithm {
     //region CLASS VARIABLES
     /**
-     * A map to cache brightness arrays computed for each image-resolution pair.
+     * The name of the system property overriding the byte budget of the brightness cache.
      */
-    private static final Map<Pair, float[][]> brightnessMap = new HashMap<>();
+    private static final String CACHE_BYTES_PROPERTY = "ascii_art.brightnessCacheBytes";
+
+    /**
+     * The default byte budget of the brightness cache.
+     */
+    private static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * A bounded LRU cache of the brightness arrays computed for each image-resolution pair.
+     */
+    private static final BrightnessCache<Pair> brightnessMap =
+            new BrightnessCache<>(Long.getLong(CACHE_BYTES_PROPERTY, DEFAULT_CACHE_BYTES));
+
+    /**
+     * The name of the system property setting the directory of the persistent brightness cache. The persistent cache
+     * is disabled when the property is not set.
+     */
+    private static final String DISK_CACHE_DIR_PROPERTY = "ascii_art.diskCacheDir";
+
+    /**
+     * The name of the system property overriding the byte budget of the persistent brightness cache.
+     */
+    private static final String DISK_CACHE_BYTES_PROPERTY = "ascii_art.diskCacheBytes";
+
+    /**
+     * The default byte budget of the persistent brightness cache.
+     */
+    private static final long DEFAULT_DISK_CACHE_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * The persistent cache of brightness arrays shared with later runs and other processes, or null when disabled.
+     */
+    private static final DiskBrightnessCache diskCache = openDiskCache();
 
     /**
      * The parameters controlling the ASCII art generation algorithm.
@@ -40,58 +75,150 @@ public class AsciiArtAlgorithm {
     }
 
     /**
-     * Runs the ASCII art generation algorithm on the specified image with the configured parameters.
+     * Runs the ASCII art generation algorithm on the specified image with the configured parameters. The brightness
+     * values are looked up in the caches by the content fingerprint of the image file before the image is decoded, so
+     * a hit never decodes it.
      *
      * @return a 2D array representing the ASCII art generated from the image.
+     * @throws IOException if the image is streamed and its file cannot be decoded.
      */
-    public char[][] run() {
-        Pair imageVsResolution = new Pair(alogithmParameters.getImage(), alogithmParameters.getResolution());
-        float[][] brightnessArray;
-
-        // Check if brightness array for this image-resolution pair is already computed
-        if (brightnessMap.containsKey(imageVsResolution)) {
-            brightnessArray = brightnessMap.get(imageVsResolution);
-        } else {
+    public char[][] run() throws IOException {
+        StreamedImage imageFile = alogithmParameters.getImageFile();
+        StreamedImage streamedImage = alogithmParameters.getStreamedImage();
+        int resolution = alogithmParameters.getResolution();
+        // Streamed images are subsampled in fast mode, which gives different values than a full decode.
+        boolean subsampled = streamedImage != null && alogithmParameters.isFastMode();
+        long fingerprint = imageFile.getFingerprint();
+        // Check if brightness array for this file-resolution pair is already computed, by this run or an earlier one
+        float[][] brightnessArray = getCachedBrightnesses(fingerprint, resolution, subsampled);
+        if (brightnessArray == null) {
             // Compute brightness array for the image at the specified resolution
-            brightnessArray = greyBrightnessesByResolution(alogithmParameters.getImage(),
-                                           alogithmParameters.getResolution());
-            // Cache the computed brightness array
-            brightnessMap.put(imageVsResolution, brightnessArray);
+            if (streamedImage == null) {
+                brightnessArray = greyBrightnessesByResolution(alogithmParameters.getImage(), resolution);
+            } else if (subsampled) {
+                brightnessArray = greyBrightnessesBySubsampling(streamedImage, resolution);
+            } else {
+                brightnessArray = greyBrightnessesByResolution(streamedImage, resolution);
+            }
+            cacheBrightnesses(fingerprint, resolution, subsampled, brightnessArray);
         }
 
+        // Shapes are matched on decoded images only; streamed images are matched by brightness
+        if (streamedImage == null && alogithmParameters.isShapeMode()) {
+            return getCharsByShape(brightnessArray,
+                    tileMasksByResolution(alogithmParameters.getImage(), resolution));
+        }
         return getCharsList(brightnessArray);
     }
 
+    /**
+     * Looks up the brightness array of an image file at a resolution in the in-memory cache, then in the persistent
+     * cache, whose hits are copied to the in-memory cache.
+     *
+     * @param fingerprint the content fingerprint of the image file.
+     * @param resolution  the resolution.
+     * @param subsampled  whether the values are estimated from a subsampled decode.
+     * @return the cached array, which must not be modified, or null if neither cache holds it.
+     */
+    static float[][] getCachedBrightnesses(long fingerprint, int resolution, boolean subsampled) {
+        Pair fileVsResolution = new Pair(fingerprint, resolution, subsampled);
+        float[][] brightnessArray = brightnessMap.get(fileVsResolution);
+        if (brightnessArray == null && diskCache != null) {
+            // Fall back to the arrays computed by earlier runs
+            brightnessArray = diskCache.get(fingerprint, resolution, subsampled);
+            if (brightnessArray != null) {
+                brightnessMap.put(fileVsResolution, brightnessArray);
+            }
+        }
+        return brightnessArray;
+    }
+
+    /**
+     * Stores the brightness array of an image file at a resolution in the in-memory cache and, when it is enabled, in
+     * the persistent cache.
+     *
+     * @param fingerprint     the content fingerprint of the image file.
+     * @param resolution      the resolution.
+     * @param subsampled      whether the values are estimated from a subsampled decode.
+     * @param brightnessArray the array, which must not be modified afterwards.
+     */
+    static void cacheBrightnesses(long fingerprint, int resolution, boolean subsampled, float[][] brightnessArray) {
+        brightnessMap.put(new Pair(fingerprint, resolution, subsampled), brightnessArray);
+        if (diskCache != null) {
+            diskCache.put(fingerprint, resolution, subsampled, brightnessArray);
+        }
+    }
+
+    /**
+     * Gets the cache of brightness arrays shared by all the instances, to report its statistics.
+     *
+     * @return the brightness cache.
+     */
+    static BrightnessCache<?> getBrightnessCache() {
+        return brightnessMap;
+    }
+
+    /**
+     * Gets the persistent cache of brightness arrays, to report its statistics.
+     *
+     * @return the persistent cache, or null if it is disabled.
+     */
+    static DiskBrightnessCache getDiskCache() {
+        return diskCache;
+    }
+
 
     //endregion
 
     //region PRIVATE METHODS AND CLASSES
 
+    /**
+     * Opens the persistent brightness cache in the directory set by the system property, if any.
+     *
+     * @return the persistent cache, or null if it is disabled or its directory cannot be created.
+     */
+    private static DiskBrightnessCache openDiskCache() {
+        String directory = System.getProperty(DISK_CACHE_DIR_PROPERTY);
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return new DiskBrightnessCache(Path.of(directory),
+                    Long.getLong(DISK_CACHE_BYTES_PROPERTY, DEFAULT_DISK_CACHE_BYTES));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     /**
      * A utility class representing a pair of an image and a resolution. Used as a key in the brightnessMap to cache
-     * brightness arrays.
+     * brightness arrays. The image is represented by the content fingerprint of its file, so hashing and comparing a
+     * key takes constant time whatever the image size, the key does not keep the image itself alive, and it is known
+     * before the image is decoded.
      *
-     * @param image      The image.
-     * @param resolution The resolution.
+     * @param fingerprint The content fingerprint of the image file.
+     * @param resolution  The resolution.
+     * @param subsampled  Whether the brightness values are estimated from a subsampled decode.
      */
-    private record Pair(Image image, int resolution) {
+    private record Pair(long fingerprint, int resolution, boolean subsampled) {
         /**
-         * Constructs a Pair object with the specified image and resolution.
+         * Constructs a Pair object with the specified image fingerprint and resolution.
          *
-         * @param image      the image.
-         * @param resolution the resolution.
+         * @param fingerprint the content fingerprint of the image.
+         * @param resolution  the resolution.
+         * @param subsampled  whether the brightness values are estimated from a subsampled decode.
          */
         private Pair {
         }
 
         /**
-         * Gets the image from the pair.
+         * Gets the image fingerprint from the pair.
          *
-         * @return the image.
+         * @return the content fingerprint of the image.
          */
         @Override
-        public Image image() {
-            return image;
+        public long fingerprint() {
+            return fingerprint;
         }
 
         /**
@@ -107,7 +234,7 @@ public class AsciiArtAlgorithm {
         /**
          * Indicates whether some other object is "equal to" this one. This method overrides the default implementation
          * provided by the {@code Object} class. It checks if the specified object is an instance of {@code Pair}, and
-         * if so, compares the image and resolution fields of both objects for equality.
+         * if so, compares the fingerprint, resolution and subsampled fields of both objects for equality.
          *
          * @param obj the reference object with which to compare.
          * @return {@code true} if this object is the same as the obj argument; {@code false} otherwise.
@@ -118,7 +245,8 @@ public class AsciiArtAlgorithm {
                 return false;
             }
 
-            return image.equals(other.image()) && other.resolution() == resolution;
+            return fingerprint == other.fingerprint() && other.resolution() == resolution &&
+                    other.subsampled() == subsampled;
         }
 
         /**
@@ -128,7 +256,7 @@ public class AsciiArtAlgorithm {
          */
         @Override
         public int hashCode() {
-            return hash(image, resolution);
+            return hash(fingerprint, resolution, subsampled);
         }
 
     }
@@ -139,17 +267,60 @@ public class AsciiArtAlgorithm {
      * @return the algorithm parameters.
      */
     private char[][] getCharsList(float[][] brightnessArray) {
+        // Match the whole image against one version of the charset, even if it is changed meanwhile
+        return matchBrightness(brightnessArray, alogithmParameters.getCharMatcher().getSnapshot());
+    }
+
+    /**
+     * Converts brightness values and tile shapes to the characters of the closest shape among the characters of
+     * similar brightness.
+     *
+     * @param brightnessArray the brightness of each tile.
+     * @param tileMasks       the masks of the tiles of each row, 4 longs per tile.
+     * @return the ASCII art.
+     */
+    private char[][] getCharsByShape(float[][] brightnessArray, long[][] tileMasks) {
+        return matchShape(brightnessArray, tileMasks, alogithmParameters.getCharMatcher().getSnapshot());
+    }
+
+    /**
+     * Converts brightness values to the characters of the closest brightness in a version of the charset.
+     *
+     * @param brightnessArray the brightness of each tile.
+     * @param charset         the version of the charset to match against.
+     * @return the ASCII art.
+     */
+    static char[][] matchBrightness(float[][] brightnessArray, SubImgCharMatcher.Snapshot charset) {
         char[][] asciiArt = new char[brightnessArray.length][brightnessArray[0].length];
 
         // Convert brightness values to ASCII characters
         for (int i = 0; i < brightnessArray.length; i++) {
             for (int j = 0; j < brightnessArray[i].length; j++) {
-                asciiArt[i][j] =
-                        alogithmParameters.getCharMatcher().getCharByImageBrightness(brightnessArray[i][j]);
+                asciiArt[i][j] = charset.getCharByImageBrightness(brightnessArray[i][j]);
             }
         }
 
         return asciiArt;
     }
+
+    /**
+     * Converts brightness values and tile shapes to the characters of the closest shape among the characters of
+     * similar brightness, in a version of the charset.
+     *
+     * @param brightnessArray the brightness of each tile.
+     * @param tileMasks       the masks of the tiles of each row, 4 longs per tile.
+     * @param charset         the version of the charset to match against.
+     * @return the ASCII art.
+     */
+    static char[][] matchShape(float[][] brightnessArray, long[][] tileMasks, SubImgCharMatcher.Snapshot charset) {
+        char[][] asciiArt = new char[brightnessArray.length][brightnessArray[0].length];
+        int maskWords = tileMasks[0].length / brightnessArray[0].length;
+        for (int i = 0; i < brightnessArray.length; i++) {
+            for (int j = 0; j < brightnessArray[i].length; j++) {
+                asciiArt[i][j] = charset.getCharByShape(brightnessArray[i][j], tileMasks[i], j * maskWords);
+            }
+        }
+        return asciiArt;
+    }
     //endregion
 }
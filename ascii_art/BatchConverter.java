@@ -0,0 +1,701 @@
+package ascii_art;
+
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import image.StreamedImage;
+import image_char_matching.CharConverter;
+import image_char_matching.SubImgCharMatcher;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static image.ImageToBrightnessesFacade.greyBrightnessesByResolution;
+import static image.ImageToBrightnessesFacade.tileMasksByResolution;
+
+/**
+ * Converts whole directories of images to ASCII art without user interaction, as a separate entry point from the
+ * shell. The input is a directory, whose image files are converted, or a glob such as {@code photos/**.jpg}, matched
+ * against the paths under its directory part ({@code **} crossing directories). Each image is converted at every
+ * requested resolution and written as {@code <file name>-<resolution>.txt} or {@code .html}, in the same relative
+ * directory under the output directory as the image under the input directory.
+ * <p>
+ * The images go through three stages running on separate pools: decoding, computing the ASCII art, and writing it.
+ * Decoding hashes the file and looks its brightness values up in the caches of the shell, in memory and, when it is
+ * set, on disk; the image is decoded only if a resolution is missing from them or the shape mode needs its pixels,
+ * and an image too large to decode in memory is streamed instead, matched by brightness only. Computed brightness
+ * values are stored in both caches, so a later batch or shell over the same files reads them back. The stages of
+ * different images overlap, and the number of images between the start of their decoding and the end of their writing
+ * is bounded, so that memory stays bounded whatever the number of files. Images decoded in memory also share one
+ * budget of heap bytes, the one the shell allows a single image: a decode first reserves the estimated size of the
+ * image and waits while other decodes hold the budget, and the reservation is released once its brightness values
+ * are computed. So however many images are in flight, decoded images never take more than their share of the heap. A
+ * file that cannot be decoded or written is reported and skipped. At the end, the aggregate throughput is printed.
+ * <p>
+ * Usage: {@code BatchConverter <directory|glob> [-o dir] [-r res,...] [-c chars,...] [-f txt|html] [-j threads]
+ * [--font name] [--shape]}. The charset items are the ones of the shell's add command: a character, {@code all},
+ * {@code space} or a range such as {@code a-z}.
+ */
+public class BatchConverter {
+    //region CONSTANT VARIABLES
+    /**
+     * Option setting the output directory.
+     */
+    private static final String OUTPUT_OPTION = "-o";
+
+    /**
+     * Option setting the resolutions.
+     */
+    private static final String RESOLUTION_OPTION = "-r";
+
+    /**
+     * Option setting the charset.
+     */
+    private static final String CHARS_OPTION = "-c";
+
+    /**
+     * Option setting the output format.
+     */
+    private static final String FORMAT_OPTION = "-f";
+
+    /**
+     * Option setting the number of decoding and computing threads.
+     */
+    private static final String THREADS_OPTION = "-j";
+
+    /**
+     * Option setting the font the characters are rendered in.
+     */
+    private static final String FONT_OPTION = "--font";
+
+    /**
+     * Option turning on the shape mode.
+     */
+    private static final String SHAPE_OPTION = "--shape";
+
+    /**
+     * The default output directory.
+     */
+    private static final String DEFAULT_OUTPUT = "ascii-out";
+
+    /**
+     * The default resolution, the one the shell starts with.
+     */
+    private static final int DEFAULT_RESOLUTION = 128;
+
+    /**
+     * The default charset, the one the shell starts with.
+     */
+    private static final String DEFAULT_CHARS = "0-9";
+
+    /**
+     * The text output format.
+     */
+    private static final String TEXT_FORMAT = "txt";
+
+    /**
+     * The HTML output format.
+     */
+    private static final String HTML_FORMAT = "html";
+
+    /**
+     * Separator of the items of the list options.
+     */
+    private static final String LIST_SEPARATOR = ",";
+
+    /**
+     * The characters marking a glob rather than a path.
+     */
+    private static final String GLOB_CHARS = "*?[{";
+
+    /**
+     * The prefix of a glob pattern for a PathMatcher.
+     */
+    private static final String GLOB_SYNTAX = "glob:";
+
+    /**
+     * The format of an output file name, from the name of the image file, the resolution and the format.
+     */
+    private static final String OUTPUT_NAME_FORMAT = "%s-%d.%s";
+
+    /**
+     * The number of writing threads; writing is short next to decoding and computing.
+     */
+    private static final int WRITER_THREADS = 2;
+
+    /**
+     * The number of images per thread that may be in flight at once.
+     */
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+
+    /**
+     * The number of bytes in a megabyte.
+     */
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    /**
+     * The number of heap bytes a permit of the decoding budget stands for, so that the budget of a large heap still
+     * fits in the int permits of a semaphore.
+     */
+    private static final long BYTES_PER_PERMIT = 1024 * 1024;
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Format of the final report: images, failures, output files, seconds, images per second and MB per second.
+     */
+    private static final String REPORT_FORMAT =
+            "Converted %d images (%d failed, %d files written) in %.2f s: %.1f images/s, %.1f MB/s.";
+
+    /**
+     * Format of the message reporting a file that could not be converted.
+     */
+    private static final String FAILURE_FORMAT = "Did not convert %s: %s";
+
+    /**
+     * Format of the message reporting a resolution that does not fit an image.
+     */
+    private static final String SKIPPED_RESOLUTION_FORMAT = "Did not convert %s at resolution %d: out of boundaries.";
+
+    /**
+     * Message printed for invalid arguments.
+     */
+    private static final String USAGE = "Usage: BatchConverter <directory|glob> [-o dir] [-r res,...] " +
+            "[-c chars,...] [-f txt|html] [-j threads] [--font name] [--shape]";
+
+    /**
+     * Message printed when no image matches the input.
+     */
+    private static final String NO_INPUT_MESSAGE = "Did not execute. No image found.";
+
+    /**
+     * The smallest resolution.
+     */
+    private static final int MIN_POW = 1;
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The directory the images are found in, which their relative paths are resolved against.
+     */
+    private final Path inputDirectory;
+
+    /**
+     * The directory the ASCII art files are written to.
+     */
+    private final Path outputDirectory;
+
+    /**
+     * The resolutions every image is converted at.
+     */
+    private final int[] resolutions;
+
+    /**
+     * The charset, shared by all the images.
+     */
+    private final SubImgCharMatcher.Snapshot charset;
+
+    /**
+     * The output format, TEXT_FORMAT or HTML_FORMAT.
+     */
+    private final String format;
+
+    /**
+     * The font of the HTML output.
+     */
+    private final String fontName;
+
+    /**
+     * Whether tiles are matched to characters by shape as well as by brightness.
+     */
+    private final boolean shapeMode;
+
+    /**
+     * The number of decoding threads, and of computing threads.
+     */
+    private final int threads;
+
+    /**
+     * The number of images converted at every resolution that fits them.
+     */
+    private final AtomicLong converted = new AtomicLong();
+
+    /**
+     * The number of images that could not be decoded or written.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * The number of ASCII art files written.
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * The total size of the image files read.
+     */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * The number of permits of the decoding budget, the heap bytes decoded images may take in BYTES_PER_PERMIT units.
+     */
+    private final int decodingPermits =
+            (int) Math.min(Integer.MAX_VALUE, StreamedImage.getInMemoryBudget() / BYTES_PER_PERMIT);
+
+    /**
+     * The budget of heap bytes shared by the images decoded in memory, released as their brightness is computed.
+     */
+    private final Semaphore decodingBudget = new Semaphore(decodingPermits);
+    //endregion
+
+
+    //region API
+
+    /**
+     * Constructs a converter.
+     *
+     * @param inputDirectory  the directory the images are found in.
+     * @param outputDirectory the directory the ASCII art files are written to.
+     * @param resolutions     the resolutions every image is converted at, powers of 2.
+     * @param charset         the charset, which must not be empty.
+     * @param format          the output format, "txt" or "html".
+     * @param fontName        the font the characters are rendered in.
+     * @param shapeMode       whether tiles are matched by shape as well as by brightness.
+     * @param threads         the number of decoding threads, and of computing threads.
+     */
+    BatchConverter(Path inputDirectory, Path outputDirectory, int[] resolutions, SubImgCharMatcher.Snapshot charset,
+                   String format, String fontName, boolean shapeMode, int threads) {
+        this.inputDirectory = inputDirectory;
+        this.outputDirectory = outputDirectory;
+        this.resolutions = resolutions;
+        this.charset = charset;
+        this.format = format;
+        this.fontName = fontName;
+        this.shapeMode = shapeMode;
+        this.threads = threads;
+    }
+
+    /**
+     * Converts the given images and prints the throughput. At most IN_FLIGHT_PER_THREAD images per thread are between
+     * decoding and writing at once; the files are submitted as earlier ones finish.
+     *
+     * @param files the image files, relative to the input directory.
+     * @throws IOException if the output directory cannot be created.
+     */
+    void convert(List<Path> files) throws IOException {
+        Files.createDirectories(outputDirectory);
+        ExecutorService decoders = Executors.newFixedThreadPool(threads);
+        ExecutorService computers = Executors.newFixedThreadPool(threads);
+        ExecutorService writers = Executors.newFixedThreadPool(WRITER_THREADS);
+        Semaphore inFlight = new Semaphore(threads * IN_FLIGHT_PER_THREAD);
+        long start = System.nanoTime();
+        try {
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+            for (Path file : files) {
+                inFlight.acquireUninterruptibly();
+                pending.add(CompletableFuture.supplyAsync(() -> decode(file), decoders)
+                        .thenApplyAsync(source -> compute(file, source), computers)
+                        .thenAcceptAsync(asciiArts -> write(file, asciiArts), writers)
+                        .whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                failed.incrementAndGet();
+                                System.out.println(String.format(FAILURE_FORMAT, file, messageOf(error)));
+                            }
+                            inFlight.release();
+                        }));
+            }
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                    .exceptionally(error -> null).join();
+        } finally {
+            decoders.shutdown();
+            computers.shutdown();
+            writers.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        System.out.println(String.format(REPORT_FORMAT, converted.get(), failed.get(), written.get(), seconds,
+                converted.get() / seconds, bytesRead.get() / BYTES_PER_MB / seconds));
+    }
+
+    /**
+     * The entry point of the batch conversion.
+     *
+     * @param args the input and the options, see the class documentation.
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        String input = null;
+        boolean shapeMode = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(SHAPE_OPTION)) {
+                shapeMode = true;
+            } else if (args[i].startsWith("-") && i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            } else if (input == null && !args[i].startsWith("-")) {
+                input = args[i];
+            } else {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (input == null) {
+            System.out.println(USAGE);
+            return;
+        }
+        try {
+            int[] resolutions = parseResolutions(options.getOrDefault(RESOLUTION_OPTION,
+                    Integer.toString(DEFAULT_RESOLUTION)));
+            String format = options.getOrDefault(FORMAT_OPTION, TEXT_FORMAT);
+            int threads = Integer.parseInt(options.getOrDefault(THREADS_OPTION,
+                    Integer.toString(Runtime.getRuntime().availableProcessors())));
+            String fontName = options.getOrDefault(FONT_OPTION, CharConverter.DEFAULT_FONT_NAME);
+            if (resolutions == null || threads < 1 || !(format.equals(TEXT_FORMAT) || format.equals(HTML_FORMAT)) ||
+                    !options.keySet().stream().allMatch(BatchConverter::isOption)) {
+                System.out.println(USAGE);
+                return;
+            }
+            SubImgCharMatcher charMatcher = new SubImgCharMatcher(new char[0], fontName,
+                    CharConverter.DEFAULT_PIXEL_RESOLUTION);
+            if (!addChars(charMatcher, options.getOrDefault(CHARS_OPTION, DEFAULT_CHARS))) {
+                System.out.println(ShellConstant.INVALID_ADD_REQUEST);
+                return;
+            }
+            if (charMatcher.getSnapshot().isEmpty()) {
+                System.out.println(ShellConstant.EMPTY_CHARSET_MESSAGE);
+                return;
+            }
+            Path inputDirectory = inputDirectoryOf(input);
+            List<Path> files = listImages(inputDirectory, input);
+            if (files.isEmpty()) {
+                System.out.println(NO_INPUT_MESSAGE);
+                return;
+            }
+            new BatchConverter(inputDirectory, Path.of(options.getOrDefault(OUTPUT_OPTION, DEFAULT_OUTPUT)),
+                    resolutions, charMatcher.getSnapshot(), format, fontName, shapeMode, threads).convert(files);
+        } catch (NumberFormatException e) {
+            System.out.println(USAGE);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println(ShellConstant.IO_EXPECTION);
+        }
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Opens an image file, hashes it and looks its brightness values up in the caches, then decodes it if they are
+     * not all cached or the shape mode needs the pixels, unless it is too large and has to be streamed. A decode
+     * reserves the estimated size of the image from the decoding budget first, waiting for earlier images to release
+     * it; an image larger than the whole budget is streamed.
+     *
+     * @param file the file, relative to the input directory.
+     * @return the opened image.
+     * @throws CompletionException if the file cannot be read or is not an image.
+     */
+    private Source decode(Path file) {
+        try {
+            Path path = inputDirectory.resolve(file);
+            bytesRead.addAndGet(Files.size(path));
+            StreamedImage header = StreamedImage.open(path.toString());
+            long fingerprint = header.getFingerprint();
+            float[][][] brightnessArrays = new float[resolutions.length][][];
+            boolean missing = false;
+            for (int i = 0; i < resolutions.length; i++) {
+                if (fits(header, resolutions[i])) {
+                    brightnessArrays[i] = AsciiArtAlgorithm.getCachedBrightnesses(fingerprint, resolutions[i], false);
+                    missing |= brightnessArrays[i] == null;
+                }
+            }
+            if (!(missing || shapeMode) || !header.fitsInMemory()) {
+                return new Source(header, fingerprint, brightnessArrays, null, 0);
+            }
+            int permits = (int) Math.min(decodingPermits,
+                    (header.getDecodedBytes() + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT);
+            decodingBudget.acquireUninterruptibly(permits);
+            try {
+                return new Source(header, fingerprint, brightnessArrays, header.decode(() -> false), permits);
+            } catch (IOException | RuntimeException | Error e) {
+                decodingBudget.release(permits);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Computes the ASCII art of an image at every resolution that fits it, from the cached brightness values when
+     * there are some, and caches the ones it computes. Streamed images are matched by brightness only. The image is no
+     * longer needed afterwards, so its share of the decoding budget is released, even if the computing fails.
+     *
+     * @param file   the image file, for the messages.
+     * @param source the opened image.
+     * @return the ASCII art of each resolution, null for the resolutions that do not fit the image.
+     * @throws CompletionException if a streamed image cannot be decoded.
+     */
+    private char[][][] compute(Path file, Source source) {
+        char[][][] asciiArts = new char[resolutions.length][][];
+        try {
+            for (int i = 0; i < resolutions.length; i++) {
+                if (!fits(source.header(), resolutions[i])) {
+                    System.out.println(String.format(SKIPPED_RESOLUTION_FORMAT, file, resolutions[i]));
+                    continue;
+                }
+                float[][] brightnessArray = source.brightnessArrays()[i];
+                if (brightnessArray == null) {
+                    try {
+                        brightnessArray = source.image() != null ?
+                                greyBrightnessesByResolution(source.image(), resolutions[i]) :
+                                greyBrightnessesByResolution(source.header(), resolutions[i]);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                    AsciiArtAlgorithm.cacheBrightnesses(source.fingerprint(), resolutions[i], false, brightnessArray);
+                }
+                asciiArts[i] = shapeMode && source.image() != null ?
+                        AsciiArtAlgorithm.matchShape(brightnessArray, tileMasksByResolution(source.image(),
+                                resolutions[i]), charset) :
+                        AsciiArtAlgorithm.matchBrightness(brightnessArray, charset);
+            }
+        } finally {
+            decodingBudget.release(source.permits());
+        }
+        return asciiArts;
+    }
+
+    /**
+     * Checks whether an image can be divided at a resolution, with the bounds of the shell's resolution commands.
+     *
+     * @param header     the header of the image file.
+     * @param resolution the resolution.
+     * @return true if the resolution fits the image.
+     */
+    private static boolean fits(StreamedImage header, int resolution) {
+        return AlogithmParameters.fitsResolution(header.getWidth(), header.getHeight(), resolution);
+    }
+
+    /**
+     * Writes the ASCII art of an image at every resolution that fit it.
+     *
+     * @param file      the image file relative to the input directory, which the output files are named after.
+     * @param asciiArts the ASCII art of each resolution, null for the resolutions that did not fit.
+     * @throws CompletionException if a file cannot be written.
+     */
+    private void write(Path file, char[][][] asciiArts) {
+        Path directory = file.getParent() == null ? outputDirectory : outputDirectory.resolve(file.getParent());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        for (int i = 0; i < resolutions.length; i++) {
+            if (asciiArts[i] == null) {
+                continue;
+            }
+            Path output = directory.resolve(String.format(OUTPUT_NAME_FORMAT, file.getFileName(), resolutions[i],
+                    format));
+            if (format.equals(HTML_FORMAT)) {
+                new HtmlAsciiOutput(output.toString(), fontName).out(asciiArts[i]);
+            } else {
+                writeText(output, asciiArts[i]);
+            }
+            written.incrementAndGet();
+        }
+        converted.incrementAndGet();
+    }
+
+    /**
+     * Writes ASCII art to a text file, one line per row.
+     *
+     * @param output   the file.
+     * @param asciiArt the ASCII art.
+     * @throws CompletionException if the file cannot be written.
+     */
+    private static void writeText(Path output, char[][] asciiArt) {
+        StringBuilder text = new StringBuilder(asciiArt.length * (asciiArt[0].length + 1));
+        for (char[] row : asciiArt) {
+            text.append(row).append(System.lineSeparator());
+        }
+        try {
+            Files.writeString(output, text, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Gets the directory of the input: the input itself when it is a directory, or else the part of the glob before
+     * the name holding its first pattern character.
+     *
+     * @param input a directory or a glob.
+     * @return the directory.
+     */
+    private static Path inputDirectoryOf(String input) {
+        int start = globStart(input);
+        if (start == input.length()) {
+            return Path.of(input);
+        }
+        int separator = input.lastIndexOf('/', start);
+        return Path.of(separator < 0 ? "." : input.substring(0, separator + 1));
+    }
+
+    /**
+     * Lists the image files of the input: the files of a directory, or the files matching a glob, in a stable order.
+     * Only the files with an extension ImageIO can read are kept.
+     *
+     * @param directory the directory of the input.
+     * @param input     a directory, or a glob whose directory part is searched recursively.
+     * @return the image files, relative to the directory.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private static List<Path> listImages(Path directory, String input) throws IOException {
+        Set<String> suffixes = new HashSet<>();
+        for (String suffix : ImageIO.getReaderFileSuffixes()) {
+            suffixes.add(suffix.toLowerCase(Locale.ROOT));
+        }
+        PathMatcher matcher;
+        int maxDepth;
+        if (globStart(input) == input.length()) {
+            matcher = path -> true;
+            maxDepth = 1;
+        } else {
+            int separator = input.lastIndexOf('/', globStart(input));
+            matcher = FileSystems.getDefault().getPathMatcher(GLOB_SYNTAX + input.substring(separator + 1));
+            maxDepth = Integer.MAX_VALUE;
+        }
+        try (Stream<Path> paths = Files.walk(directory, maxDepth)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(directory::relativize)
+                    .filter(matcher::matches)
+                    .filter(path -> suffixes.contains(suffixOf(path)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Finds the first pattern character of a glob.
+     *
+     * @param input a directory or a glob.
+     * @return the index of the first pattern character, or the length of the input if there is none.
+     */
+    private static int globStart(String input) {
+        int start = input.length();
+        for (char c : GLOB_CHARS.toCharArray()) {
+            int index = input.indexOf(c);
+            if (index >= 0) {
+                start = Math.min(start, index);
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Gets the extension of a file name, in lower case.
+     *
+     * @param path the file.
+     * @return the extension without the dot, or an empty string.
+     */
+    private static String suffixOf(Path path) {
+        String name = path.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return extension < 0 ? "" : name.substring(extension + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Parses a comma-separated list of resolutions.
+     *
+     * @param list the list.
+     * @return the resolutions, or null if one of them is not a positive power of 2.
+     * @throws NumberFormatException if an item is not a number.
+     */
+    private static int[] parseResolutions(String list) {
+        String[] items = list.split(LIST_SEPARATOR);
+        int[] resolutions = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            resolutions[i] = Integer.parseInt(items[i].trim());
+            if (resolutions[i] < MIN_POW || Integer.bitCount(resolutions[i]) != 1) {
+                return null;
+            }
+        }
+        return resolutions;
+    }
+
+    /**
+     * Adds the items of a comma-separated charset to a matcher: characters, "all", "space" or ranges such as "a-z".
+     *
+     * @param charMatcher the matcher.
+     * @param list        the charset items.
+     * @return false if an item is not valid.
+     */
+    static boolean addChars(SubImgCharMatcher charMatcher, String list) {
+        for (String item : list.split(LIST_SEPARATOR)) {
+            if (item.length() == ShellConstant.SINGLE_CHAR) {
+                charMatcher.addChar(item.charAt(ShellConstant.FIRST_INDEX));
+            } else if (item.equals(ShellConstant.ALL_CHARS)) {
+                charMatcher.addCharsInRange(ShellConstant.SPACE_CHAR, ShellConstant.TILDA_CHAR);
+            } else if (item.equals(ShellConstant.SPACE)) {
+                charMatcher.addChar(ShellConstant.SPACE_CHAR);
+            } else {
+                String[] sep = item.split(ShellConstant.MINUS_REGEX);
+                if (sep.length != ShellConstant.TWO_CHARS || sep[ShellConstant.FIRST_INDEX].length() !=
+                        ShellConstant.SINGLE_CHAR || sep[ShellConstant.SECOND_INDEX].length() !=
+                        ShellConstant.SINGLE_CHAR) {
+                    return false;
+                }
+                char first = sep[ShellConstant.FIRST_INDEX].charAt(ShellConstant.FIRST_INDEX);
+                char last = sep[ShellConstant.SECOND_INDEX].charAt(ShellConstant.FIRST_INDEX);
+                charMatcher.addCharsInRange((char) Math.min(first, last), (char) Math.max(first, last));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an argument is one of the options taking a value.
+     *
+     * @param option the argument.
+     * @return true if it is a known option.
+     */
+    private static boolean isOption(String option) {
+        return option.equals(OUTPUT_OPTION) || option.equals(RESOLUTION_OPTION) || option.equals(CHARS_OPTION) ||
+                option.equals(FORMAT_OPTION) || option.equals(THREADS_OPTION) || option.equals(FONT_OPTION);
+    }
+
+    /**
+     * An image between the decoding and the computing stages.
+     *
+     * @param header           the header of the image file.
+     * @param fingerprint      the content fingerprint of the file, the key of the caches.
+     * @param brightnessArrays the cached brightness values of each resolution, null where they are not cached or the
+     *                         resolution does not fit.
+     * @param image            the decoded image, or null if it was not needed or is too large to decode.
+     * @param permits          the permits of the decoding budget the decoded image holds until it is computed.
+     */
+    private record Source(StreamedImage header, long fingerprint, float[][][] brightnessArrays, Image image,
+                          int permits) {
+    }
+
+    /**
+     * Gets the message of the error a stage failed with.
+     *
+     * @param error the error, possibly wrapped by the futures.
+     * @return the message of the error, or its class name when it has none.
+     */
+    private static String messageOf(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+    //endregion
+}
@@ -0,0 +1,203 @@
+package ascii_art;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of brightness arrays, bounded by an estimate of the bytes its arrays occupy on the heap
+ * rather than by an entry count. When adding an array pushes the total over the budget, the least recently used
+ * arrays are evicted until it fits again. The cache counts hits, misses and evictions so that its effectiveness can be
+ * queried at runtime. All the methods are synchronized, so one cache can be shared between threads.
+ *
+ * @param <K> the type of the cache keys.
+ */
+class BrightnessCache<K> {
+    //region CONSTANT VARIABLES
+    /**
+     * The estimated size in bytes of an array header on the heap.
+     */
+    private static final long ARRAY_HEADER_BYTES = 16;
+
+    /**
+     * The estimated size in bytes of a reference on the heap.
+     */
+    private static final long REFERENCE_BYTES = 4;
+
+    /**
+     * The estimated size in bytes of a map entry holding an array, including the entry, the key and the links of the
+     * access order.
+     */
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    /**
+     * The initial capacity of the underlying map.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The load factor of the underlying map.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The cached arrays, iterated from the least to the most recently used.
+     */
+    private final LinkedHashMap<K, float[][]> entries =
+            new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /**
+     * The maximum number of bytes the cached arrays may occupy.
+     */
+    private final long capacityBytes;
+
+    /**
+     * The estimated number of bytes the cached arrays currently occupy.
+     */
+    private long usedBytes;
+
+    /**
+     * The number of lookups that found their key.
+     */
+    private long hits;
+
+    /**
+     * The number of lookups that did not find their key.
+     */
+    private long misses;
+
+    /**
+     * The number of arrays evicted to respect the byte budget.
+     */
+    private long evictions;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Constructs an empty cache with the given byte budget.
+     *
+     * @param capacityBytes the maximum number of bytes the cached arrays may occupy.
+     */
+    BrightnessCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Looks up the array cached for the given key, and marks it as the most recently used.
+     *
+     * @param key the key.
+     * @return the cached array, or null if there is none.
+     */
+    synchronized float[][] get(K key) {
+        float[][] brightnessArray = entries.get(key);
+        if (brightnessArray == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return brightnessArray;
+    }
+
+    /**
+     * Caches an array under the given key, evicting the least recently used arrays if the byte budget is exceeded. An
+     * array larger than the whole budget is not cached.
+     *
+     * @param key             the key.
+     * @param brightnessArray the array to cache.
+     */
+    synchronized void put(K key, float[][] brightnessArray) {
+        long size = estimateBytes(brightnessArray);
+        if (size > capacityBytes) {
+            return;
+        }
+        float[][] previous = entries.put(key, brightnessArray);
+        if (previous != null) {
+            usedBytes -= estimateBytes(previous);
+        }
+        usedBytes += size;
+        Iterator<Map.Entry<K, float[][]>> eldest = entries.entrySet().iterator();
+        while (usedBytes > capacityBytes && eldest.hasNext()) {
+            usedBytes -= estimateBytes(eldest.next().getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Gets the number of cached arrays.
+     *
+     * @return the number of entries.
+     */
+    synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the estimated number of bytes the cached arrays occupy.
+     *
+     * @return the used bytes.
+     */
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Gets the maximum number of bytes the cached arrays may occupy.
+     *
+     * @return the byte budget.
+     */
+    long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    /**
+     * Gets the number of lookups that found their key.
+     *
+     * @return the number of hits.
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that did not find their key.
+     *
+     * @return the number of misses.
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of arrays evicted to respect the byte budget.
+     *
+     * @return the number of evictions.
+     */
+    synchronized long getEvictions() {
+        return evictions;
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Estimates the number of bytes a brightness array and its cache entry occupy on the heap.
+     *
+     * @param brightnessArray the array.
+     * @return the estimated size in bytes.
+     */
+    private static long estimateBytes(float[][] brightnessArray) {
+        long size = ENTRY_OVERHEAD_BYTES + ARRAY_HEADER_BYTES + brightnessArray.length * REFERENCE_BYTES;
+        for (float[] row : brightnessArray) {
+            size += ARRAY_HEADER_BYTES + (long) row.length * Float.BYTES;
+        }
+        return size;
+    }
+    //endregion
+}
@@ -0,0 +1,386 @@
+package ascii_art;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A persistent cache of brightness arrays, stored as one file per array in a directory so that they survive the end
+ * of the program. An entry is keyed by the content fingerprint of the image file and the resolution, and holds a small
+ * header followed by the raw float values, which are read back through a memory mapping of the file. The values are
+ * copied out of the mapping, one bulk copy per row, since the algorithm and the memory cache work on float arrays.
+ * <p>
+ * Several processes may share the directory: an entry is written to a temporary file and then atomically renamed, so
+ * a reader sees either a whole entry or none, and an entry that disappears or is malformed is treated as a miss. The
+ * size of the directory is tracked in memory: it is measured when the cache is opened, and each stored entry adds to
+ * it. Only when it exceeds the byte budget is the directory listed again, which also counts the entries of the other
+ * processes, and the least recently used files (by modification time, which a hit refreshes) are deleted down to a
+ * fraction of the budget, so that the next entries do not list it again right away. The cache is best effort: an I/O
+ * error never fails the algorithm, it only costs a recomputation.
+ */
+class DiskBrightnessCache {
+    //region CONSTANT VARIABLES
+    /**
+     * The value identifying a cache file, followed by the format version. Version 2 keys the entries by the hash of
+     * the image file rather than of its pixels.
+     */
+    private static final int MAGIC = 0x42524932;
+
+    /**
+     * The size in bytes of the header: the magic value, the number of rows and the number of columns.
+     */
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    /**
+     * The extension of the cache files.
+     */
+    private static final String EXTENSION = ".bri";
+
+    /**
+     * The glob matching the cache files.
+     */
+    private static final String ENTRY_GLOB = "*" + EXTENSION;
+
+    /**
+     * The glob matching the temporary files being written.
+     */
+    private static final String TEMP_GLOB = "*.tmp";
+
+    /**
+     * The prefix of the temporary files being written.
+     */
+    private static final String TEMP_PREFIX = "entry";
+
+    /**
+     * The suffix of the temporary files being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The format of an entry file name, from the fingerprint, the resolution and whether the values are subsampled.
+     */
+    private static final String NAME_FORMAT = "%016x-%d%s" + EXTENSION;
+
+    /**
+     * The marker added to the names of subsampled entries.
+     */
+    private static final String SUBSAMPLED_MARKER = "-s";
+
+    /**
+     * The age after which a temporary file is considered left over by a process that died while writing it.
+     */
+    private static final long STALE_TEMP_MILLIS = 60L * 60 * 1000;
+
+    /**
+     * The fraction of the byte budget the files are brought down to by an eviction.
+     */
+    private static final double EVICTION_TARGET = 0.75;
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The directory holding the cache files.
+     */
+    private final Path directory;
+
+    /**
+     * The maximum number of bytes the cache files may occupy.
+     */
+    private final long capacityBytes;
+
+    /**
+     * The number of bytes the cache files occupy, as last measured plus the entries stored since.
+     */
+    private long usedBytes;
+
+    /**
+     * The number of lookups that found their entry.
+     */
+    private long hits;
+
+    /**
+     * The number of lookups that did not find their entry.
+     */
+    private long misses;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Constructs a cache over the given directory, which is created if needed, and measures the files it holds.
+     *
+     * @param directory     the directory holding the cache files.
+     * @param capacityBytes the maximum number of bytes the cache files may occupy.
+     * @throws IOException if the directory cannot be created or listed.
+     */
+    DiskBrightnessCache(Path directory, long capacityBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.capacityBytes = capacityBytes;
+        for (EntryFile entry : listEntries()) {
+            usedBytes += entry.size();
+        }
+    }
+
+    /**
+     * Reads the array stored for the given key, and marks it as the most recently used.
+     *
+     * @param fingerprint the content fingerprint of the image.
+     * @param resolution  the resolution.
+     * @param subsampled  whether the values are estimated from a subsampled decode.
+     * @return the stored array, or null if there is none or it cannot be read.
+     */
+    synchronized float[][] get(long fingerprint, int resolution, boolean subsampled) {
+        Path file = entryPath(fingerprint, resolution, subsampled);
+        float[][] brightnessArray = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            brightnessArray = read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            if (brightnessArray != null) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            // A missing entry, or one evicted by another process meanwhile, is a miss.
+        }
+        if (brightnessArray == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return brightnessArray;
+    }
+
+    /**
+     * Stores an array under the given key, then evicts the least recently used entries if the byte budget is
+     * exceeded. An array larger than the whole budget is not stored. An entry replacing one stored meanwhile by
+     * another process is counted twice until the next eviction measures the directory again.
+     *
+     * @param fingerprint     the content fingerprint of the image.
+     * @param resolution      the resolution.
+     * @param subsampled      whether the values are estimated from a subsampled decode.
+     * @param brightnessArray the array to store.
+     */
+    synchronized void put(long fingerprint, int resolution, boolean subsampled, float[][] brightnessArray) {
+        int rows = brightnessArray.length;
+        int cols = rows == 0 ? 0 : brightnessArray[0].length;
+        long size = HEADER_BYTES + (long) rows * cols * Float.BYTES;
+        if (size > capacityBytes) {
+            return;
+        }
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, TEMP_PREFIX, TEMP_SUFFIX);
+            write(temp, brightnessArray, rows, cols, size);
+            Files.move(temp, entryPath(fingerprint, resolution, subsampled),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+            usedBytes += size;
+            if (usedBytes > capacityBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            // The entry is simply not stored.
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Gets the directory holding the cache files.
+     *
+     * @return the directory.
+     */
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the number of lookups that found their entry.
+     *
+     * @return the number of hits.
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that did not find their entry.
+     *
+     * @return the number of misses.
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Gets the path of the file storing the entry of the given key.
+     *
+     * @param fingerprint the content fingerprint of the image.
+     * @param resolution  the resolution.
+     * @param subsampled  whether the values are estimated from a subsampled decode.
+     * @return the path of the entry.
+     */
+    private Path entryPath(long fingerprint, int resolution, boolean subsampled) {
+        return directory.resolve(String.format(NAME_FORMAT, fingerprint, resolution,
+                subsampled ? SUBSAMPLED_MARKER : ""));
+    }
+
+    /**
+     * Reads an array from the mapped content of an entry file.
+     *
+     * @param buffer the mapped file.
+     * @return the array, or null if the file is not a well-formed entry.
+     */
+    private static float[][] read(MappedByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            return null;
+        }
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        if (rows < 0 || cols < 0 || buffer.capacity() != HEADER_BYTES + (long) rows * cols * Float.BYTES) {
+            return null;
+        }
+        FloatBuffer values = buffer.asFloatBuffer();
+        float[][] brightnessArray = new float[rows][cols];
+        for (float[] row : brightnessArray) {
+            values.get(row);
+        }
+        return brightnessArray;
+    }
+
+    /**
+     * Writes an array to a file, through a read-write memory mapping of it.
+     *
+     * @param file            the file to write.
+     * @param brightnessArray the array.
+     * @param rows            the number of rows of the array.
+     * @param cols            the number of columns of the array.
+     * @param size            the size of the file in bytes.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void write(Path file, float[][] brightnessArray, int rows, int cols, long size)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(rows).putInt(cols);
+            FloatBuffer values = buffer.asFloatBuffer();
+            for (float[] row : brightnessArray) {
+                values.put(row);
+            }
+        }
+    }
+
+    /**
+     * Measures the directory again, then deletes the least recently used entries until the files fit in the eviction
+     * target. Files deleted meanwhile by another process are skipped.
+     *
+     * @throws IOException if the directory cannot be listed.
+     */
+    private void evict() throws IOException {
+        List<EntryFile> entries = listEntries();
+        usedBytes = 0;
+        for (EntryFile entry : entries) {
+            usedBytes += entry.size();
+        }
+        if (usedBytes <= capacityBytes) {
+            return;
+        }
+        long targetBytes = (long) (capacityBytes * EVICTION_TARGET);
+        entries.sort(Comparator.comparingLong(EntryFile::lastModifiedMillis));
+        for (int i = 0; i < entries.size() && usedBytes > targetBytes; i++) {
+            deleteQuietly(entries.get(i).path());
+            usedBytes -= entries.get(i).size();
+        }
+    }
+
+    /**
+     * Lists the entry files of the directory, deleting along the way the temporary files left over by processes that
+     * died while writing them.
+     *
+     * @return the entry files, with their sizes and modification times.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private List<EntryFile> listEntries() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(directory, TEMP_GLOB)) {
+            for (Path temp : temps) {
+                if (now - lastModifiedMillis(temp) > STALE_TEMP_MILLIS) {
+                    deleteQuietly(temp);
+                }
+            }
+        }
+        List<EntryFile> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, ENTRY_GLOB)) {
+            for (Path file : files) {
+                entries.add(new EntryFile(file, sizeOf(file), lastModifiedMillis(file)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the modification time of a file.
+     *
+     * @param file the file.
+     * @return the modification time in milliseconds, or 0 if the file no longer exists.
+     */
+    private static long lastModifiedMillis(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the size of a file.
+     *
+     * @param file the file.
+     * @return the size in bytes, or 0 if the file no longer exists.
+     */
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes a file if it exists, ignoring errors.
+     *
+     * @param file the file, or null.
+     */
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Another process may hold or have deleted it; it is retried at the next eviction.
+        }
+    }
+
+    /**
+     * An entry file found while listing the directory.
+     *
+     * @param path               the path of the file.
+     * @param size               the size of the file in bytes.
+     * @param lastModifiedMillis the modification time of the file in milliseconds.
+     */
+    private record EntryFile(Path path, long size, long lastModifiedMillis) {
+    }
+    //endregion
+}
@@ -0,0 +1,17 @@
+package ascii_art;
+
+/**
+ * Exception class for errors related to changing the font or the glyph size the characters are rendered in. This
+ * exception is thrown when the requested font is not installed or the requested size is not a supported number.
+ */
+class FontException extends Exception {
+
+    /**
+     * Constructs a FontException with the specified detail message.
+     *
+     * @param message the detail message (which is saved for later retrieval by the getMessage() method)
+     */
+    public FontException(String message) {
+        super(message);
+    }
+}
@@ -3,6 +3,7 @@ package ascii_art;
 import ascii_output.AsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import image_char_matching.CharConverter;
 
 import java.io.IOException;
 import java.util.List;
@@ -23,11 +24,6 @@ public class Shell {
      * Console output handler for ASCII art.
      */
     private static final ConsoleAsciiOutput CONSOLE_ASCII_OUTPUT = new ConsoleAsciiOutput();
-
-    /**
-     * HTML output handler for ASCII art.
-     */
-    private static final HtmlAsciiOutput HTML_ASCII_OUTPUT = new HtmlAsciiOutput(OUTPUT_HTML_PATH, FONT);
     //endregion
     //region PRIVATE MEMBERS
     /**
@@ -54,11 +50,7 @@ public class Shell {
      * Runs the shell, providing a command-line interface for interacting with the ASCII art algorithm.
      */
     public void run() {
-        try {
-            alogithmparameters = new AlogithmParameters();
-        } catch (IOException e) {
-            System.out.println(IO_EXPECTION);
-        }
+        alogithmparameters = new AlogithmParameters();
         AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(alogithmparameters);
 
         while (true) {
@@ -88,9 +80,14 @@ public class Shell {
             case RES_UP -> handleResUp();
             case RES_DOWN -> handleResDown();
             case OUTPUT_CONSOLE_COMMAND -> output = CONSOLE_ASCII_OUTPUT;
-            case OUTPUT_HTML_COMMAND -> output = HTML_ASCII_OUTPUT;
+            case OUTPUT_HTML_COMMAND -> output = getHtmlOutput();
             case ASCII_ART_COMMAND -> runAlgorithm(algorithm);
             case CHARS -> printAllCharsSorted();
+            case CACHE -> printCacheStatistics();
+            case FAST_ON -> handleFastMode(true, FAST_ON_MESSAGE);
+            case FAST_OFF -> handleFastMode(false, FAST_OFF_MESSAGE);
+            case SHAPE_ON -> handleShapeMode(true, SHAPE_ON_MESSAGE);
+            case SHAPE_OFF -> handleShapeMode(false, SHAPE_OFF_MESSAGE);
             default -> handleComplexCommand(command);
         }
         return true;
@@ -100,10 +97,14 @@ public class Shell {
      * Handles the "res down" command, decreasing the resolution if possible.
      */
     private void handleResDown() {
-        if (!alogithmparameters.resDown()) {
-            System.out.println(RES_EXCEED_WIDTH);
-        } else {
-            System.out.println(RES_UPDATE_MESSAGE + alogithmparameters.getResolution() + DOT);
+        try {
+            if (!alogithmparameters.resDown()) {
+                System.out.println(RES_EXCEED_WIDTH);
+            } else {
+                System.out.println(RES_UPDATE_MESSAGE + alogithmparameters.getResolution() + DOT);
+            }
+        } catch (IOException e) {
+            System.out.println(IO_EXPECTION);
         }
     }
 
@@ -111,10 +112,14 @@ public class Shell {
      * Handles the "res up" command, increasing the resolution if possible.
      */
     private void handleResUp() {
-        if (!alogithmparameters.resUp()) {
-            System.out.println(RES_EXCEED_WIDTH);
-        } else {
-            System.out.println(RES_UPDATE_MESSAGE + alogithmparameters.getResolution() + DOT);
+        try {
+            if (!alogithmparameters.resUp()) {
+                System.out.println(RES_EXCEED_WIDTH);
+            } else {
+                System.out.println(RES_UPDATE_MESSAGE + alogithmparameters.getResolution() + DOT);
+            }
+        } catch (IOException e) {
+            System.out.println(IO_EXPECTION);
         }
     }
 
@@ -133,6 +138,42 @@ public class Shell {
         System.out.println();
     }
 
+    /**
+     * Handles the "fast on" and "fast off" commands. The mode applies to the images loaded afterwards.
+     *
+     * @param fastMode whether to turn the fast mode on.
+     * @param message  the message confirming the change.
+     */
+    private void handleFastMode(boolean fastMode, String message) {
+        alogithmparameters.setFastMode(fastMode);
+        System.out.println(message);
+    }
+
+    /**
+     * Handles the "shape on" and "shape off" commands.
+     *
+     * @param shapeMode whether to turn the shape mode on.
+     * @param message   the message confirming the change.
+     */
+    private void handleShapeMode(boolean shapeMode, String message) {
+        alogithmparameters.setShapeMode(shapeMode);
+        System.out.println(message);
+    }
+
+    /**
+     * Prints the statistics of the brightness cache, and of the persistent one when it is enabled.
+     */
+    private void printCacheStatistics() {
+        BrightnessCache<?> cache = AsciiArtAlgorithm.getBrightnessCache();
+        System.out.println(String.format(CACHE_STATS_FORMAT, cache.getSize(), cache.getUsedBytes(),
+                cache.getCapacityBytes(), cache.getHits(), cache.getMisses(), cache.getEvictions()));
+        DiskBrightnessCache diskCache = AsciiArtAlgorithm.getDiskCache();
+        if (diskCache != null) {
+            System.out.println(String.format(DISK_CACHE_STATS_FORMAT, diskCache.getDirectory(),
+                    diskCache.getHits(), diskCache.getMisses()));
+        }
+    }
+
     /**
      * Runs a complex command, handling special cases like adding or removing characters from the charset.
      *
@@ -141,10 +182,11 @@ public class Shell {
      * @throws RemoveException         If an error occurs while removing characters.
      * @throws OutputException         If an error occurs while changing the output mode.
      * @throws ResException            If an error occurs while changing the resolution.
+     * @throws FontException           If an error occurs while changing the font or the glyph size.
      * @throws InvalidCommandException If the command is invalid.
      */
     private void runComplexCommand(String command) throws AddException, RemoveException, OutputException,
-            ResException, InvalidCommandException {
+            ResException, FontException, InvalidCommandException {
         if (command.startsWith(ADD_PREFIX + SPACE_PREFIX)) {
             handleAddCommand(command);
         } else if (command.equals(ADD_PREFIX)) {
@@ -159,6 +201,10 @@ public class Shell {
             throw new ResException(INVALID_RES_REQUEST);
         } else if (command.startsWith(CHANGE_IMAGE_PREFIX + SPACE_PREFIX)) {
             handleImageUpdate(command);
+        } else if (command.startsWith(FONT_PREFIX + SPACE_PREFIX)) {
+            handleFontUpdate(command.substring(FONT_PREFIX.length() + SPACE_PREFIX.length()));
+        } else if (command.startsWith(GLYPH_PREFIX + SPACE_PREFIX) || command.equals(GLYPH_PREFIX)) {
+            handleGlyphUpdate(command);
         } else {
             throw new InvalidCommandException(INVALID_COMMAND);
         }
@@ -172,12 +218,60 @@ public class Shell {
     private void handleComplexCommand(String command) {
         try {
             runComplexCommand(command);
-        } catch (AddException | RemoveException | OutputException | ResException |
+        } catch (AddException | RemoveException | OutputException | ResException | FontException |
                  InvalidCommandException e) {
             System.out.println(e.getMessage());
         }
     }
 
+    /**
+     * Handles the "font" command, rendering the characters in another font from now on: an installed font, a logical
+     * font such as Monospaced, or the default font. The HTML output, if selected, switches to the same font.
+     *
+     * @param fontName The name of the font, which may contain spaces.
+     * @throws FontException If the font cannot be used.
+     */
+    private void handleFontUpdate(String fontName) throws FontException {
+        if (!CharConverter.isFontAvailable(fontName)) {
+            throw new FontException(INVALID_FONT_REQUEST);
+        }
+        alogithmparameters.setGlyphStyle(fontName, alogithmparameters.getGlyphResolution());
+        if (output instanceof HtmlAsciiOutput) {
+            output = getHtmlOutput();
+        }
+        System.out.println(FONT_UPDATE_MESSAGE + fontName + DOT);
+    }
+
+    /**
+     * Handles the "glyph" command, rendering the characters at another pixel size from now on.
+     *
+     * @param command The command containing the new size.
+     * @throws FontException If the size is missing, not a number or not supported.
+     */
+    private void handleGlyphUpdate(String command) throws FontException {
+        int glyphResolution;
+        try {
+            glyphResolution = Integer.parseInt(command.substring(GLYPH_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            throw new FontException(INVALID_GLYPH_REQUEST);
+        }
+        if (glyphResolution < CharConverter.MIN_PIXEL_RESOLUTION ||
+                glyphResolution > CharConverter.MAX_PIXEL_RESOLUTION) {
+            throw new FontException(INVALID_GLYPH_REQUEST);
+        }
+        alogithmparameters.setGlyphStyle(alogithmparameters.getFontName(), glyphResolution);
+        System.out.println(GLYPH_UPDATE_MESSAGE + glyphResolution + DOT);
+    }
+
+    /**
+     * Builds the HTML output handler, in the font the characters are rendered in.
+     *
+     * @return the HTML output handler.
+     */
+    private AsciiOutput getHtmlOutput() {
+        return new HtmlAsciiOutput(OUTPUT_HTML_PATH, alogithmparameters.getFontName());
+    }
+
     /**
      * Handles updating the image used for ASCII art generation based on the provided command. If the image path is
      * valid, it updates the current image; otherwise, it prints an error message.
@@ -235,10 +329,8 @@ public class Shell {
             // Add a single character
             alogithmparameters.getCharMatcher().addChar(command.charAt(FIRST_INDEX));
         } else if (command.equals(ALL_CHARS)) {
-            for (char c = SPACE_CHAR; c <= TILDA_CHAR; c++) {
-                // Add all printable ASCII characters
-                alogithmparameters.getCharMatcher().addChar(c);
-            }
+            // Add all printable ASCII characters
+            alogithmparameters.getCharMatcher().addCharsInRange(SPACE_CHAR, TILDA_CHAR);
         } else if (command.equals(SPACE)) {
             // Add space character
             alogithmparameters.getCharMatcher().addChar(SPACE_CHAR);
@@ -266,9 +358,7 @@ public class Shell {
     private void addCharsInRange(char c, char c1) {
         char min_c = ((int) c < (int) c1) ? c : c1;
         char max_c = ((int) c > (int) c1) ? c : c1;
-        for (char ch = min_c; ch <= max_c; ch++) {
-            alogithmparameters.getCharMatcher().addChar(ch);
-        }
+        alogithmparameters.getCharMatcher().addCharsInRange(min_c, max_c);
     }
 
     /**
@@ -285,10 +375,8 @@ public class Shell {
             // Remove a single character
             alogithmparameters.getCharMatcher().removeChar(command.charAt(FIRST_INDEX));
         } else if (command.equals(ALL_CHARS)) {
-            for (char c = SPACE_CHAR; c <= TILDA_CHAR; c++) {
-                // Remove all printable ASCII characters
-                alogithmparameters.getCharMatcher().removeChar(c);
-            }
+            // Remove all printable ASCII characters
+            alogithmparameters.getCharMatcher().removeCharsInRange(SPACE_CHAR, TILDA_CHAR);
         } else if (command.equals(SPACE)) {
             // Remove space character
             alogithmparameters.getCharMatcher().removeChar(SPACE_CHAR);
@@ -316,9 +404,7 @@ public class Shell {
     private void removeCharsInRange(char c, char c1) {
         char min_c = ((int) c < (int) c1) ? c : c1;
         char max_c = ((int) c > (int) c1) ? c : c1;
-        for (char ch = min_c; ch <= max_c; ch++) {
-            alogithmparameters.getCharMatcher().removeChar(ch);
-        }
+        alogithmparameters.getCharMatcher().removeCharsInRange(min_c, max_c);
     }
 
     /**
@@ -331,8 +417,12 @@ public class Shell {
             System.out.println(EMPTY_CHARSET_MESSAGE);
             return;
         }
-        char[][] resultChars = algorithm.run();
-        output.out(resultChars);
+        try {
+            char[][] resultChars = algorithm.run();
+            output.out(resultChars);
+        } catch (IOException e) {
+            System.out.println(IO_EXPECTION);
+        }
     }
 
     //endregion
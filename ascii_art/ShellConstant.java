@@ -16,11 +16,6 @@ class ShellConstant {
      */
     static final String OUTPUT_HTML_PATH = "out.html";
 
-    /**
-     * Default font used for ASCII art rendering.
-     */
-    static final String FONT = "Courier New";
-
     /**
      * Command string prefix for user input.
      */
@@ -51,6 +46,16 @@ class ShellConstant {
      */
     static final String RES_PREFIX = "res";
 
+    /**
+     * Prefix for commands related to changing the font the characters are rendered in.
+     */
+    static final String FONT_PREFIX = "font";
+
+    /**
+     * Prefix for commands related to changing the pixel size the characters are rendered at.
+     */
+    static final String GLYPH_PREFIX = "glyph";
+
     /**
      * Prefix for commands related to adding characters to the charset.
      */
@@ -137,6 +142,61 @@ class ShellConstant {
      */
     static final String CHARS = "chars";
 
+    /**
+     * Command string for turning on the fast mode, which decodes only a subsample of newly loaded images.
+     */
+    static final String FAST_ON = "fast on";
+
+    /**
+     * Command string for turning off the fast mode.
+     */
+    static final String FAST_OFF = "fast off";
+
+    /**
+     * Message indicating that the fast mode was turned on.
+     */
+    static final String FAST_ON_MESSAGE = "Fast mode set to on.";
+
+    /**
+     * Message indicating that the fast mode was turned off.
+     */
+    static final String FAST_OFF_MESSAGE = "Fast mode set to off.";
+
+    /**
+     * Command string for turning on the shape mode, which matches tiles to characters by shape.
+     */
+    static final String SHAPE_ON = "shape on";
+
+    /**
+     * Command string for turning off the shape mode.
+     */
+    static final String SHAPE_OFF = "shape off";
+
+    /**
+     * Message indicating that the shape mode was turned on.
+     */
+    static final String SHAPE_ON_MESSAGE = "Shape mode set to on.";
+
+    /**
+     * Message indicating that the shape mode was turned off.
+     */
+    static final String SHAPE_OFF_MESSAGE = "Shape mode set to off.";
+
+    /**
+     * Command string for printing the statistics of the brightness cache.
+     */
+    static final String CACHE = "cache";
+
+    /**
+     * Format of the brightness cache statistics: entries, used bytes, byte budget, hits, misses and evictions.
+     */
+    static final String CACHE_STATS_FORMAT = "Cache: %d entries, %d/%d bytes, %d hits, %d misses, %d evictions.";
+
+    /**
+     * Format of the statistics of the persistent brightness cache.
+     */
+    static final String DISK_CACHE_STATS_FORMAT = "Disk cache: %s, %d hits, %d misses.";
+
     /**
      * Regular expression for splitting commands with spaces.
      */
@@ -178,6 +238,26 @@ class ShellConstant {
      */
     static final String RES_UPDATE_MESSAGE = "Resolution set to ";
 
+    /**
+     * Error message for a request to change to a font that is not installed.
+     */
+    static final String INVALID_FONT_REQUEST = "Did not change font due to unknown font.";
+
+    /**
+     * Message indicating a successful font change.
+     */
+    static final String FONT_UPDATE_MESSAGE = "Font set to ";
+
+    /**
+     * Error message for an invalid request to change the glyph size.
+     */
+    static final String INVALID_GLYPH_REQUEST = "Did not change glyph size due to incorrect format.";
+
+    /**
+     * Message indicating a successful glyph size change.
+     */
+    static final String GLYPH_UPDATE_MESSAGE = "Glyph size set to ";
+
     /**
      * Error message for an I/O exception while handling an image file.
      */
@@ -0,0 +1,223 @@
+package image;
+
+import java.util.Arrays;
+
+import static image.ImageBrightnessCalculator.getBrightness;
+import static image.ImageBrightnessCalculator.getGreyVal;
+import static image.RappedImage.WHITE_GREY;
+import static image.RappedImage.findClosestPowerOf2;
+
+/**
+ * Keeps the brightness grid of the frames of an animation up to date, recomputing only the tiles whose pixels changed
+ * since the previous frame. Each frame is compared with the previous one row by row, and a tile is recomputed only if
+ * one of its row segments differs; unchanged rows cost one vectorized array comparison. Comparing the pixels
+ * themselves, rather than hashes or sums of them, never misses a change.
+ * <p>
+ * The tiles are laid out as in {@link ImageToBrightnessesFacade#greyBrightnessesByResolution(Image, int)}, over the
+ * frame padded to the nearest power of 2, and the brightness of a tile is the sum of its grey values, so values agree
+ * with it up to float rounding. The first frame, and any frame of another size than the previous one, is computed as
+ * a whole. A tracker is not thread-safe; tile rows are split between threads internally.
+ */
+public class FrameDeltaTracker {
+    //region CONSTANT VARIABLES
+    /**
+     * Index of the first row of a grid.
+     */
+    private static final int FIRST_ROW = 0;
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The number of tiles along the width of the padded frames.
+     */
+    private final int resolution;
+
+    /**
+     * The pixels of the previous frame, or null before the first frame.
+     */
+    private int[] previousPixels;
+
+    /**
+     * The width of the previous frame.
+     */
+    private int width;
+
+    /**
+     * The height of the previous frame.
+     */
+    private int height;
+
+    /**
+     * The side of a tile in pixels.
+     */
+    private int tileSize;
+
+    /**
+     * The number of padding rows above the frame.
+     */
+    private int rowOffset;
+
+    /**
+     * The number of padding columns left of the frame.
+     */
+    private int colOffset;
+
+    /**
+     * The brightness of each tile of the last frame.
+     */
+    private float[][] brightnesses;
+
+    /**
+     * Whether each tile changed in the last frame.
+     */
+    private boolean[][] changed;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Constructs a tracker for the given resolution.
+     *
+     * @param resolution the number of tiles along the width of the padded frames.
+     */
+    public FrameDeltaTracker(int resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * Moves to the next frame, recomputing the brightness of the tiles that changed.
+     *
+     * @param frame the frame, which must not be modified afterwards since it is compared with the next one.
+     * @return the number of tiles that changed, all of them for the first frame or a frame of a new size.
+     */
+    public int update(Image frame) {
+        int[] pixels = frame.getPixels();
+        boolean all = previousPixels == null || frame.getWidth() != width || frame.getHeight() != height;
+        if (all) {
+            resize(frame.getWidth(), frame.getHeight());
+        }
+        int rows = brightnesses.length;
+        int[] changedPerRow = new int[rows];
+        int[] previous = previousPixels;
+        ParallelRange.forEach(rows, (long) width * tileSize, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                changedPerRow[i] = updateRow(i, pixels, all ? null : previous);
+            }
+        });
+        previousPixels = pixels;
+        int changedTiles = 0;
+        for (int count : changedPerRow) {
+            changedTiles += count;
+        }
+        return changedTiles;
+    }
+
+    /**
+     * Gets the brightness grid of the last frame. The array is updated in place by the next frames and must not be
+     * modified.
+     *
+     * @return the brightness of each tile.
+     */
+    public float[][] getBrightnesses() {
+        return brightnesses;
+    }
+
+    /**
+     * Checks whether a tile changed in the last frame.
+     *
+     * @param row the row of the tile.
+     * @param col the column of the tile.
+     * @return true if the brightness of the tile was recomputed.
+     */
+    public boolean isChanged(int row, int col) {
+        return changed[row][col];
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Sets up the tile grid for frames of a new size.
+     *
+     * @param newWidth  the width of the frames.
+     * @param newHeight the height of the frames.
+     */
+    private void resize(int newWidth, int newHeight) {
+        width = newWidth;
+        height = newHeight;
+        int paddedWidth = findClosestPowerOf2(width);
+        int paddedHeight = findClosestPowerOf2(height);
+        tileSize = paddedWidth / resolution;
+        rowOffset = (paddedHeight - height) / RappedImage.HALF_VAL;
+        colOffset = (paddedWidth - width) / RappedImage.HALF_VAL;
+        brightnesses = new float[paddedHeight / tileSize][resolution];
+        changed = new boolean[brightnesses.length][resolution];
+    }
+
+    /**
+     * Finds the changed tiles of a tile row and recomputes their brightness.
+     *
+     * @param row      the tile row.
+     * @param pixels   the pixels of the frame.
+     * @param previous the pixels of the previous frame, or null to recompute every tile.
+     * @return the number of tiles of the row that changed.
+     */
+    private int updateRow(int row, int[] pixels, int[] previous) {
+        int top = Math.max(row * tileSize - rowOffset, FIRST_ROW);
+        int bottom = Math.min((row + 1) * tileSize - rowOffset, height);
+        boolean[] rowChanged = changed[row];
+        Arrays.fill(rowChanged, previous == null);
+        if (previous != null) {
+            for (int y = top; y < bottom; y++) {
+                int start = y * width;
+                if (Arrays.equals(pixels, start, start + width, previous, start, start + width)) {
+                    continue;
+                }
+                for (int col = 0; col < resolution; col++) {
+                    int left = start + Math.max(col * tileSize - colOffset, 0);
+                    int right = start + Math.min((col + 1) * tileSize - colOffset, width);
+                    if (!rowChanged[col] && left < right &&
+                            !Arrays.equals(pixels, left, right, previous, left, right)) {
+                        rowChanged[col] = true;
+                    }
+                }
+            }
+        }
+        int changedTiles = 0;
+        for (int col = 0; col < resolution; col++) {
+            if (rowChanged[col]) {
+                brightnesses[row][col] = computeTile(col, top, bottom, pixels);
+                changedTiles++;
+            }
+        }
+        return changedTiles;
+    }
+
+    /**
+     * Computes the brightness of a tile from the pixels of the frame and the padding around it.
+     *
+     * @param col    the tile column.
+     * @param top    the first frame row of the tile.
+     * @param bottom the frame row after the last one of the tile.
+     * @param pixels the pixels of the frame.
+     * @return the brightness of the tile.
+     */
+    private float computeTile(int col, int top, int bottom, int[] pixels) {
+        int left = Math.max(col * tileSize - colOffset, 0);
+        int right = Math.min((col + 1) * tileSize - colOffset, width);
+        double greySum = 0;
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                greySum += getGreyVal(pixels[y * width + x]);
+            }
+        }
+        long tilePixels = (long) tileSize * tileSize;
+        long insidePixels = (long) Math.max(bottom - top, 0) * Math.max(right - left, 0);
+        greySum += (tilePixels - insidePixels) * (double) WHITE_GREY;
+        return getBrightness(greySum, tilePixels);
+    }
+    //endregion
+}
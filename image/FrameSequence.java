@@ -0,0 +1,410 @@
+package image;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The frames of an animation, read one at a time: either the image files of a directory, ordered by the number in
+ * their names (so {@code frame2.png} comes before {@code frame10.png}), or the frames of an animated GIF.
+ * <p>
+ * GIF frames are stored as patches over the previous frame, so each one is drawn at its position on a canvas of the
+ * logical screen size, and the canvas is then disposed of as the frame requires (kept, cleared to transparent, or
+ * restored to the previous canvas) before the next one is drawn. Transparent pixels are decoded as the other images
+ * are, without their alpha byte. A frame sequence is not thread-safe.
+ */
+public class FrameSequence implements Closeable {
+    //region CONSTANT VARIABLES
+    /**
+     * The extension of the animated GIF files.
+     */
+    private static final String GIF_EXTENSION = ".gif";
+
+    /**
+     * The format name of the GIF reader.
+     */
+    private static final String GIF_FORMAT = "gif";
+
+    /**
+     * The name of the native metadata format of GIF frames.
+     */
+    private static final String GIF_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+    /**
+     * The metadata node holding the size of the logical screen of a GIF.
+     */
+    private static final String LOGICAL_SCREEN_DESCRIPTOR = "LogicalScreenDescriptor";
+
+    /**
+     * The attribute holding the width of the logical screen.
+     */
+    private static final String SCREEN_WIDTH = "logicalScreenWidth";
+
+    /**
+     * The attribute holding the height of the logical screen.
+     */
+    private static final String SCREEN_HEIGHT = "logicalScreenHeight";
+
+    /**
+     * The metadata node holding the position of a frame.
+     */
+    private static final String IMAGE_DESCRIPTOR = "ImageDescriptor";
+
+    /**
+     * The metadata node holding the disposal method of a frame.
+     */
+    private static final String GRAPHIC_CONTROL_EXTENSION = "GraphicControlExtension";
+
+    /**
+     * The attribute holding the left position of a frame.
+     */
+    private static final String LEFT_POSITION = "imageLeftPosition";
+
+    /**
+     * The attribute holding the top position of a frame.
+     */
+    private static final String TOP_POSITION = "imageTopPosition";
+
+    /**
+     * The attribute holding the disposal method of a frame.
+     */
+    private static final String DISPOSAL_METHOD = "disposalMethod";
+
+    /**
+     * The disposal method clearing the area of the frame before the next one.
+     */
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+
+    /**
+     * The disposal method restoring the canvas drawn before the frame.
+     */
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+
+    /**
+     * The pattern of the number in a frame file name.
+     */
+    private static final Pattern FRAME_NUMBER = Pattern.compile("\\d+");
+
+    /**
+     * The number of a file whose name has no number, which comes first.
+     */
+    private static final long NO_FRAME_NUMBER = -1;
+
+    /**
+     * The number of frames of a GIF that has not been read to its end.
+     */
+    private static final int UNKNOWN_COUNT = -1;
+
+    /**
+     * The index of the first frame of a GIF.
+     */
+    private static final int FIRST_FRAME = 0;
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The frame files of a directory, or null for a GIF.
+     */
+    private final List<Path> files;
+
+    /**
+     * The reader of the GIF, or null for a directory.
+     */
+    private final ImageReader reader;
+
+    /**
+     * The stream the GIF is read from, which the reader does not close, or null for a directory.
+     */
+    private final ImageInputStream input;
+
+    /**
+     * The canvas the GIF frames are drawn on, or null for a directory.
+     */
+    private final BufferedImage canvas;
+
+    /**
+     * The number of frames, or UNKNOWN_COUNT while the GIF has not been read to its end.
+     */
+    private int frameCount;
+
+    /**
+     * The index of the next frame.
+     */
+    private int nextFrame;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Opens the frames of a directory or of an animated GIF. Only the directory listing or the GIF header is read. The
+     * frames of a directory are its files with a suffix ImageIO can read, so that other files lying in it, such as
+     * thumbnails databases or notes, are skipped. If the GIF cannot be opened, its file is closed before the exception
+     * is thrown.
+     *
+     * @param path a directory of frames or a GIF file.
+     * @return the frame sequence.
+     * @throws IOException if the directory cannot be listed or the GIF cannot be read.
+     */
+    public static FrameSequence open(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            Set<String> suffixes = new HashSet<>();
+            for (String suffix : ImageIO.getReaderFileSuffixes()) {
+                suffixes.add(suffix.toLowerCase(Locale.ROOT));
+            }
+            try (Stream<Path> paths = Files.list(path)) {
+                return new FrameSequence(paths.filter(Files::isRegularFile)
+                        .filter(file -> suffixes.contains(suffixOf(file)))
+                        .sorted(Comparator.comparingLong(FrameSequence::frameNumber)
+                                .thenComparing(Path::toString))
+                        .toList());
+            }
+        }
+        if (!path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(GIF_EXTENSION)) {
+            throw new IOException("Not a directory or a GIF: " + path);
+        }
+        ImageInputStream input = ImageIO.createImageInputStream(path.toFile());
+        if (input == null) {
+            throw new IOException("Cannot read GIF: " + path);
+        }
+        ImageReader reader = null;
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(GIF_FORMAT);
+            if (!readers.hasNext()) {
+                throw new IOException("Cannot read GIF: " + path);
+            }
+            reader = readers.next();
+            reader.setInput(input, true);
+            return new FrameSequence(reader, input);
+        } catch (IOException | RuntimeException e) {
+            if (reader != null) {
+                reader.dispose();
+            }
+            try {
+                input.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next frame.
+     *
+     * @return the next frame, or null after the last one.
+     * @throws IOException if the frame cannot be decoded.
+     */
+    public Image next() throws IOException {
+        if (files != null) {
+            return nextFrame < files.size() ? new Image(files.get(nextFrame++).toString()) : null;
+        }
+        if (frameCount >= 0 && nextFrame >= frameCount) {
+            return null;
+        }
+        BufferedImage frame;
+        try {
+            frame = reader.read(nextFrame);
+        } catch (IndexOutOfBoundsException e) {
+            frameCount = nextFrame;
+            return null;
+        }
+        Node metadata = reader.getImageMetadata(nextFrame).getAsTree(GIF_METADATA_FORMAT);
+        nextFrame++;
+        int left = intAttribute(metadata, IMAGE_DESCRIPTOR, LEFT_POSITION);
+        int top = intAttribute(metadata, IMAGE_DESCRIPTOR, TOP_POSITION);
+        String disposal = attribute(metadata, GRAPHIC_CONTROL_EXTENSION, DISPOSAL_METHOD);
+        int[] previous = RESTORE_TO_PREVIOUS.equals(disposal) ?
+                canvas.getRGB(0, 0, canvas.getWidth(), canvas.getHeight(), null, 0, canvas.getWidth()) : null;
+        Graphics2D graphics = canvas.createGraphics();
+        try {
+            graphics.drawImage(frame, left, top, null);
+        } finally {
+            graphics.dispose();
+        }
+        Image image = new Image(RasterDecoder.decode(canvas), canvas.getWidth(), canvas.getHeight());
+        if (RESTORE_TO_BACKGROUND.equals(disposal)) {
+            Graphics2D clear = canvas.createGraphics();
+            try {
+                clear.setComposite(AlphaComposite.Clear);
+                clear.fillRect(left, top, frame.getWidth(), frame.getHeight());
+            } finally {
+                clear.dispose();
+            }
+        } else if (previous != null) {
+            canvas.setRGB(0, 0, canvas.getWidth(), canvas.getHeight(), previous, 0, canvas.getWidth());
+        }
+        return image;
+    }
+
+    /**
+     * Releases the GIF reader and closes its file.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            try {
+                reader.dispose();
+            } finally {
+                input.close();
+            }
+        }
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Constructs the frame sequence of a directory.
+     *
+     * @param files the frame files, in order.
+     */
+    private FrameSequence(List<Path> files) {
+        this.files = files;
+        this.reader = null;
+        this.input = null;
+        this.canvas = null;
+        this.frameCount = files.size();
+    }
+
+    /**
+     * Constructs the frame sequence of a GIF, with a canvas of its logical screen size, or of its first frame when
+     * the screen size is missing.
+     *
+     * @param reader the GIF reader, positioned on the file.
+     * @param input  the stream the reader reads the file from.
+     * @throws IOException if the GIF header cannot be read.
+     */
+    private FrameSequence(ImageReader reader, ImageInputStream input) throws IOException {
+        this.files = null;
+        this.reader = reader;
+        this.input = input;
+        int width = reader.getWidth(FIRST_FRAME);
+        int height = reader.getHeight(FIRST_FRAME);
+        IIOMetadata streamMetadata = reader.getStreamMetadata();
+        if (streamMetadata != null) {
+            Node tree = streamMetadata.getAsTree(streamMetadata.getNativeMetadataFormatName());
+            Node screen = child(tree, LOGICAL_SCREEN_DESCRIPTOR);
+            if (screen != null) {
+                width = Math.max(width, intValue(screen, SCREEN_WIDTH));
+                height = Math.max(height, intValue(screen, SCREEN_HEIGHT));
+            }
+        }
+        this.canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.frameCount = UNKNOWN_COUNT;
+    }
+
+    /**
+     * Gets the number in the name of a frame file.
+     *
+     * @param file the file.
+     * @return the last number in its name, or NO_FRAME_NUMBER.
+     */
+    private static long frameNumber(Path file) {
+        Matcher matcher = FRAME_NUMBER.matcher(file.getFileName().toString());
+        long number = NO_FRAME_NUMBER;
+        while (matcher.find()) {
+            try {
+                number = Long.parseLong(matcher.group());
+            } catch (NumberFormatException e) {
+                number = Long.MAX_VALUE;
+            }
+        }
+        return number;
+    }
+
+    /**
+     * Gets the suffix of a file name, the part after its last dot, in lower case.
+     *
+     * @param file the file.
+     * @return the suffix, or an empty string if the name has no dot.
+     */
+    private static String suffixOf(Path file) {
+        String name = file.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return extension < 0 ? "" : name.substring(extension + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets the first child of a metadata node with the given name.
+     *
+     * @param node the node.
+     * @param name the name of the child.
+     * @return the child, or null.
+     */
+    private static Node child(Node node, String name) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets an attribute of a child of a metadata node.
+     *
+     * @param node      the node.
+     * @param childName the name of the child.
+     * @param name      the name of the attribute.
+     * @return the value of the attribute, or null if the child or the attribute is missing.
+     */
+    private static String attribute(Node node, String childName, String name) {
+        Node child = child(node, childName);
+        if (child == null) {
+            return null;
+        }
+        NamedNodeMap attributes = child.getAttributes();
+        Node attribute = attributes == null ? null : attributes.getNamedItem(name);
+        return attribute == null ? null : attribute.getNodeValue();
+    }
+
+    /**
+     * Gets an integer attribute of a child of a metadata node.
+     *
+     * @param node      the node.
+     * @param childName the name of the child.
+     * @param name      the name of the attribute.
+     * @return the value of the attribute, or 0 if it is missing.
+     */
+    private static int intAttribute(Node node, String childName, String name) {
+        String value = attribute(node, childName, name);
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+
+    /**
+     * Gets an integer attribute of a metadata node.
+     *
+     * @param node the node.
+     * @param name the name of the attribute.
+     * @return the value of the attribute, or 0 if it is missing.
+     */
+    private static int intValue(Node node, String name) {
+        Node attribute = node.getAttributes().getNamedItem(name);
+        return attribute == null ? 0 : Integer.parseInt(attribute.getNodeValue());
+    }
+    //endregion
+}
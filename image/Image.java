@@ -5,6 +5,7 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * A package-private class of the package image representing an image. This class provides methods to read, create,
@@ -15,21 +16,61 @@ import java.io.IOException;
 public class Image {
     //region STATIC VARIABLES
     /**
-     * A prime number used in the hash code calculation.
+     * The initial value of the content fingerprint.
      */
-    private static final int FIRST_PRIME = 17;
+    private static final long FINGERPRINT_SEED = 0x9E3779B97F4A7C15L;
 
     /**
-     * Another prime number used in the hash code calculation.
+     * The odd constant each pixel is multiplied by before it is mixed into the fingerprint.
      */
-    private static final int SECOND_PRIME = 31;
+    private static final long PIXEL_PRIME = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * The odd constant the fingerprint is multiplied by after each pixel is mixed in.
+     */
+    private static final long MIX_PRIME = 0x9FB21C651E98DF25L;
+
+    /**
+     * The odd constant used by the final avalanche of the fingerprint.
+     */
+    private static final long AVALANCHE_PRIME = 0xFF51AFD7ED558CCDL;
+
+    /**
+     * The rotation applied to the fingerprint after each pixel is mixed in.
+     */
+    private static final int MIX_ROTATION = 31;
+
+    /**
+     * The shift used by the final avalanche of the fingerprint.
+     */
+    private static final int AVALANCHE_SHIFT = 33;
+
+    /**
+     * The shift placing the width in the upper half of a long.
+     */
+    private static final int HALF_LONG_SHIFT = 32;
+
+    /**
+     * Mask of a single color channel after shifting it to the low byte.
+     */
+    private static final int CHANNEL_MASK = 0xFF;
+
+    /**
+     * The bit offset of the red channel in a packed pixel.
+     */
+    private static final int RED_SHIFT = 16;
+
+    /**
+     * The bit offset of the green channel in a packed pixel.
+     */
+    private static final int GREEN_SHIFT = 8;
     //endregion
 
     //region PRIVATE VARIABLES
     /**
-     * The two-dimensional array representing the pixels of the image.
+     * The packed RGB values of the image pixels in row-major order, one int (0xRRGGBB) per pixel.
      */
-    private final Color[][] pixelArray;
+    private final int[] pixels;
 
     /**
      * The width of the image in pixels.
@@ -40,6 +81,21 @@ public class Image {
      * The height of the image in pixels.
      */
     private final int height;
+
+    /**
+     * A 64-bit hash of the dimensions and pixels of the image, computed on first use.
+     */
+    private long fingerprint;
+
+    /**
+     * Whether the fingerprint has been computed.
+     */
+    private boolean fingerprinted;
+
+    /**
+     * The summed-area table of the grey values of this image, built on first use.
+     */
+    private SummedAreaTable summedAreaTable;
     //endregion
 
     //region CONSTRUCTORS
@@ -52,26 +108,25 @@ public class Image {
      */
     public Image(String filename) throws IOException {
         BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null) {
+            throw new IOException("Not a readable image: " + filename);
+        }
         width = im.getWidth();
         height = im.getHeight();
 
-        pixelArray = new Color[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                pixelArray[i][j] = new Color(im.getRGB(j, i));
-            }
-        }
+        pixels = RasterDecoder.decode(im);
     }
 
     /**
-     * Constructs an Image object with a specified pixel array, width, and height.
+     * Constructs an Image object over a packed pixel array, width, and height. The array is used as is and is not
+     * copied, so it must not be modified afterwards: the content fingerprint is computed once, on first use.
      *
-     * @param pixelArray the two-dimensional array representing the pixels of the image.
-     * @param width      the width of the image in pixels.
-     * @param height     the height of the image in pixels.
+     * @param pixels the packed RGB values of the pixels in row-major order (0xRRGGBB, one int per pixel).
+     * @param width  the width of the image in pixels.
+     * @param height the height of the image in pixels.
      */
-    public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+    public Image(int[] pixels, int width, int height) {
+        this.pixels = pixels;
         this.width = width;
         this.height = height;
     }
@@ -80,47 +135,53 @@ public class Image {
     //region API
 
     /**
-     * Compares this image with another object for equality.
+     * Compares this image with another object for equality. The same instance and images of different sizes are
+     * decided in constant time, and images with different fingerprints once both fingerprints are computed; the pixels
+     * are only compared when the fingerprints match.
      *
      * @param other the object to compare with.
      * @return true if the objects are equal, false otherwise.
      */
     @Override
     public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
         if (!(other instanceof Image otherImage)) {
             return false;
         }
-        if (width != otherImage.getWidth() || height != otherImage.getHeight()) {
+        if (width != otherImage.getWidth() || height != otherImage.getHeight() ||
+                getFingerprint() != otherImage.getFingerprint()) {
             return false;
         }
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                if (!pixelArray[i][j].equals((otherImage.getPixel(i, j)))) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return Arrays.equals(pixels, otherImage.pixels);
     }
 
     /**
-     * Generates a hash code for the image.
+     * Generates a hash code for the image from its content fingerprint, in constant time once the fingerprint is
+     * computed.
      *
      * @return the hash code value for this image.
      */
     @Override
     public int hashCode() {
-        int result = FIRST_PRIME;
-        result = SECOND_PRIME * result + width;
-        result = SECOND_PRIME * result + height;
-
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                result = SECOND_PRIME * result + pixelArray[i][j].hashCode();
-            }
-        }
+        return Long.hashCode(getFingerprint());
+    }
 
-        return result;
+    /**
+     * Gets the 64-bit content fingerprint of the image. Two equal images always have the same fingerprint, and two
+     * different images have the same fingerprint with probability of about 2^-64, so the fingerprint can stand in for
+     * the image as a cache key. The fingerprint scans every pixel, so it is only computed on the first call, and
+     * images that are never compared or hashed, such as animation frames, do not pay for it.
+     *
+     * @return the content fingerprint of the image.
+     */
+    public synchronized long getFingerprint() {
+        if (!fingerprinted) {
+            fingerprint = computeFingerprint(pixels, width, height);
+            fingerprinted = true;
+        }
+        return fingerprint;
     }
 
     /**
@@ -142,14 +203,105 @@ public class Image {
     }
 
     /**
-     * Gets the color of the pixel at the specified coordinates.
+     * Gets the color of the pixel at the specified coordinates. This allocates a new Color on every call, so hot
+     * loops should use {@link #getRGB(int, int)} instead.
      *
-     * @param x the x-coordinate of the pixel.
-     * @param y the y-coordinate of the pixel.
+     * @param x the x-coordinate (row) of the pixel.
+     * @param y the y-coordinate (column) of the pixel.
      * @return the color of the pixel.
      */
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(getRGB(x, y));
+    }
+
+    /**
+     * Gets the packed RGB value (0xRRGGBB) of the pixel at the specified coordinates without allocating.
+     *
+     * @param x the x-coordinate (row) of the pixel.
+     * @param y the y-coordinate (column) of the pixel.
+     * @return the packed RGB value of the pixel.
+     */
+    public int getRGB(int x, int y) {
+        return pixels[x * width + y];
+    }
+
+    /**
+     * Gets the red component of the pixel at the specified coordinates.
+     *
+     * @param x the x-coordinate (row) of the pixel.
+     * @param y the y-coordinate (column) of the pixel.
+     * @return the red component, between 0 and 255.
+     */
+    public int getRed(int x, int y) {
+        return (getRGB(x, y) >> RED_SHIFT) & CHANNEL_MASK;
+    }
+
+    /**
+     * Gets the green component of the pixel at the specified coordinates.
+     *
+     * @param x the x-coordinate (row) of the pixel.
+     * @param y the y-coordinate (column) of the pixel.
+     * @return the green component, between 0 and 255.
+     */
+    public int getGreen(int x, int y) {
+        return (getRGB(x, y) >> GREEN_SHIFT) & CHANNEL_MASK;
+    }
+
+    /**
+     * Gets the blue component of the pixel at the specified coordinates.
+     *
+     * @param x the x-coordinate (row) of the pixel.
+     * @param y the y-coordinate (column) of the pixel.
+     * @return the blue component, between 0 and 255.
+     */
+    public int getBlue(int x, int y) {
+        return getRGB(x, y) & CHANNEL_MASK;
+    }
+
+    /**
+     * Gets the packed pixel array backing this image, for views that read the pixels in place.
+     *
+     * @return the packed RGB values of the image in row-major order.
+     */
+    int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Gets the summed-area table of the grey values of this image. The table is built on the first call and reused by
+     * every later call, so brightness at any resolution is computed without scanning the pixels again. The table
+     * holds one double per pixel, so it triples the heap the image retains, to about 12 bytes per pixel.
+     *
+     * @return the summed-area table of the image.
+     */
+    synchronized SummedAreaTable getSummedAreaTable() {
+        if (summedAreaTable == null) {
+            summedAreaTable = new SummedAreaTable(this);
+        }
+        return summedAreaTable;
+    }
+
+    //endregion
+
+    //region PRIVATE METHODS
+
+    /**
+     * Computes the content fingerprint of an image by mixing its dimensions and every pixel into a 64-bit hash.
+     *
+     * @param pixels the packed pixels of the image.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the content fingerprint.
+     */
+    private static long computeFingerprint(int[] pixels, int width, int height) {
+        long hash = FINGERPRINT_SEED ^ (((long) width << HALF_LONG_SHIFT) | height);
+        for (int pixel : pixels) {
+            hash = Long.rotateLeft(hash ^ (pixel * PIXEL_PRIME), MIX_ROTATION) * MIX_PRIME;
+        }
+        hash ^= hash >>> AVALANCHE_SHIFT;
+        hash *= AVALANCHE_PRIME;
+        hash ^= hash >>> AVALANCHE_SHIFT;
+        return hash;
     }
 
     //endregion
@@ -1,7 +1,5 @@
 package image;
 
-import java.awt.*;
-
 public class ImageBrightnessCalculator {
     //region CONSTANT VARIABLES
 
@@ -26,42 +24,56 @@ public class ImageBrightnessCalculator {
     private static final float MAX_ASCII = 255;
 
     /**
-     * init a counter value to 0
+     * Mask of a single color channel after shifting it to the low byte.
+     */
+    private static final int CHANNEL_MASK = 0xFF;
+
+    /**
+     * The bit offset of the red channel in a packed pixel.
+     */
+    private static final int RED_SHIFT = 16;
+
+    /**
+     * The bit offset of the green channel in a packed pixel.
      */
-    private static final int INITIAL_COUNTER = 0;
+    private static final int GREEN_SHIFT = 8;
 
 
     //endregion
 
     /**
-     * Calculates the brightness value of a single image.
+     * Calculates the brightness value of a single tile. The grey sum of the tile is read from the summed-area table of
+     * its image, so this takes constant time regardless of the tile size.
+     *
+     * @param tile the input tile.
+     * @return the brightness value of the tile.
+     */
+    static float getImgBrightness(ImageTile tile) {
+        return getBrightness(tile.getGreySum(), (long) tile.getHeight() * tile.getWidth());
+    }
+
+    /**
+     * Calculates the brightness value of a region from the sum of its grey values.
      *
-     * @param image the input image.
-     * @return the brightness value of the image.
+     * @param greySum    the sum of the grey values of the pixels in the region.
+     * @param pixelCount the number of pixels in the region.
+     * @return the brightness value of the region.
      */
-    static float getImgBrightness(Image image) {
-        float val = INITIAL_COUNTER;
-        for (int i = 0; i < image.getHeight(); i++) {
-            for (int j = 0; j < image.getWidth(); j++) {
-                Color color = image.getPixel(i, j);
-                float greyVal = getGreyVal(color);
-                val += greyVal;
-            }
-        }
-        return val / (image.getHeight() * image.getWidth() * MAX_ASCII);
+    static float getBrightness(double greySum, long pixelCount) {
+        return (float) (greySum / (pixelCount * (double) MAX_ASCII));
     }
 
 
     /**
-     * Calculates the grayscale value of a given color.
+     * Calculates the grayscale value of a given packed color.
      *
-     * @param color the input color.
+     * @param rgb the input color, packed as 0xRRGGBB.
      * @return the grayscale value of the color.
      */
-    private static float getGreyVal(Color color) {
-        int red = color.getRed();
-        int green = color.getGreen();
-        int blue = color.getBlue();
+    static float getGreyVal(int rgb) {
+        int red = (rgb >> RED_SHIFT) & CHANNEL_MASK;
+        int green = (rgb >> GREEN_SHIFT) & CHANNEL_MASK;
+        int blue = rgb & CHANNEL_MASK;
         return red * RED_RATIO + blue * BLUE_RATIO + green * GREEN_RATIO;
     }
 }
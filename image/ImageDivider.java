@@ -1,19 +1,17 @@
 package image;
 
-import java.awt.*;
-
 public class ImageDivider {
     /**
-     * Divides the given image into sub-images with the specified resolution.
+     * Divides the given padded image into sub-images with the specified resolution.
      *
-     * @param image      the input image.
+     * @param image      the padded input image.
      * @param resolution the resolution for dividing the image.
-     * @return a 2D array of sub-images.
+     * @return a 2D array of tile views over the image.
      */
-    static Image[][] divideImage(Image image, int resolution) {
+    static ImageTile[][] divideImage(RappedImage image, int resolution) {
         int subImgWidth = image.getWidth() / resolution;
         int numOfRows = image.getHeight() / subImgWidth;
-        Image[][] subImagesArray = new Image[numOfRows][resolution];
+        ImageTile[][] subImagesArray = new ImageTile[numOfRows][resolution];
         for (int i = 0; i < numOfRows; i++) {
             for (int j = 0; j < resolution; j++) {
                 subImagesArray[i][j] = getSubImage(image, i, j, subImgWidth);
@@ -23,23 +21,15 @@ public class ImageDivider {
     }
 
     /**
-     * Retrieves a sub-image from the original image.
+     * Retrieves a sub-image of the original image as a tile view, without copying its pixels.
      *
-     * @param image          the original image.
+     * @param image          the padded original image.
      * @param x              the row index of the sub-image.
      * @param y              the column index of the sub-image.
      * @param resolutionSize the size of the sub-image.
-     * @return the sub-image.
+     * @return the tile view of the sub-image.
      */
-    private static Image getSubImage(Image image, int x, int y, int resolutionSize) {
-        int startRow = x * resolutionSize;
-        int startCol = y * resolutionSize;
-        Color[][] pixelArray = new Color[resolutionSize][resolutionSize];
-        for (int i = 0; i < resolutionSize; i++) {
-            for (int j = 0; j < resolutionSize; j++) {
-                pixelArray[i][j] = image.getPixel(startRow + i, startCol + j);
-            }
-        }
-        return new Image(pixelArray, resolutionSize, resolutionSize);
+    private static ImageTile getSubImage(RappedImage image, int x, int y, int resolutionSize) {
+        return new ImageTile(image, x * resolutionSize, y * resolutionSize, resolutionSize, resolutionSize);
     }
 }
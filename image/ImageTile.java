@@ -0,0 +1,87 @@
+package image;
+
+/**
+ * A rectangular view over a region of an image. The view does not hold any pixels: it only records where the region
+ * starts and how large it is, and reads the region's grey sum from the padded image it belongs to, so creating a tile
+ * never copies pixels and measuring it never scans them.
+ */
+class ImageTile {
+    //region PRIVATE VARIABLES
+    /**
+     * The padded parent image.
+     */
+    private final RappedImage image;
+
+    /**
+     * The row of the parent image where the tile starts.
+     */
+    private final int startRow;
+
+    /**
+     * The column of the parent image where the tile starts.
+     */
+    private final int startCol;
+
+    /**
+     * The width of the tile in pixels.
+     */
+    private final int width;
+
+    /**
+     * The height of the tile in pixels.
+     */
+    private final int height;
+    //endregion
+
+
+    //region CONSTRUCTORS
+
+    /**
+     * Constructs a tile view over a region of the given padded image.
+     *
+     * @param image    the padded parent image.
+     * @param startRow the row of the parent image where the tile starts.
+     * @param startCol the column of the parent image where the tile starts.
+     * @param width    the width of the tile in pixels.
+     * @param height   the height of the tile in pixels.
+     */
+    ImageTile(RappedImage image, int startRow, int startCol, int width, int height) {
+        this.image = image;
+        this.startRow = startRow;
+        this.startCol = startCol;
+        this.width = width;
+        this.height = height;
+    }
+    //endregion
+
+
+    //region API
+
+    /**
+     * Gets the width of the tile in pixels.
+     *
+     * @return the width of the tile.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the tile in pixels.
+     *
+     * @return the height of the tile.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the sum of the grey values of the pixels inside the tile, in constant time.
+     *
+     * @return the grey sum of the tile.
+     */
+    double getGreySum() {
+        return image.getSum(startRow, startCol, height, width);
+    }
+    //endregion
+}
@@ -1,5 +1,7 @@
 package image;
 
+import java.io.IOException;
+
 import static image.ImageBrightnessCalculator.getImgBrightness;
 import static image.ImageDivider.divideImage;
 import static image.RappedImage.resize;
@@ -25,6 +27,9 @@ public class ImageToBrightnessesFacade {
 
     /**
      * Calculates grayscale brightness values for each sub-image of the given image with the specified resolution.
+     * Every resolution is computed from the summed-area table of the image, which is built on the first call and kept
+     * with the image, so another resolution of an image that was already rendered costs four lookups per tile rather
+     * than a scan of the pixels. The grids themselves are not kept here; callers cache them.
      *
      * @param image      the input image.
      * @param resolution the resolution for dividing the image.
@@ -32,32 +37,101 @@ public class ImageToBrightnessesFacade {
      */
     public static float[][] greyBrightnessesByResolution(Image image, int resolution) {
         // Resize the image to the nearest power of 2, to ensure that it can be divided into sub-images
-        // of the specified resolution
-        image = resize(image);
+        // of the specified resolution. The padding is virtual, so this copies nothing.
+        RappedImage resized = resize(image);
         // Divide the resized image into sub-images with the specified resolution and get grayscale
         // brightness values for each sub-image.
-        Image[][] subImages = divideImage(image, resolution);
+        ImageTile[][] subImages = divideImage(resized, resolution);
         // Get grayscale brightness values for each sub-image and return the 2D array.
         return getBrightnessArray(subImages);
     }
+
+    /**
+     * Calculates grayscale brightness values for each sub-image of an image file that is too large to be decoded in
+     * memory. The file is decoded one band of tile rows at a time, so memory use is bounded by the band and the tile
+     * grid rather than by the image. Results agree with the in-memory path up to float rounding.
+     *
+     * @param image      the streamed image file.
+     * @param resolution the resolution for dividing the image.
+     * @return a 2D array containing grayscale brightness values for each sub-image.
+     * @throws IOException if the image file cannot be decoded.
+     */
+    public static float[][] greyBrightnessesByResolution(StreamedImage image, int resolution) throws IOException {
+        return image.readBrightnesses(resolution, false);
+    }
+
+    /**
+     * Estimates grayscale brightness values for each sub-image of an image file while decoding only a regular grid of
+     * samples, which is much faster when the tiles are large. The sampling period is the largest power of 2 leaving at
+     * least 8 samples along each side of a tile, and each sample is taken at the center of a period x period cell of
+     * the padded image, so cells never straddle two tiles.
+     * <p>
+     * Accuracy: each sample stands for its cell, so the brightness of a tile differs from the exact value by at most
+     * the largest grey range (brightest minus darkest pixel, in brightness units) found inside one cell of the tile.
+     * Smooth images are therefore almost exact, while fine patterns aligned with the sampling grid may alias. On the
+     * border of the image, the image part of a tile is estimated as the mean of its samples, and an image part too thin
+     * to hold any sample counts as padding.
+     *
+     * @param image      the streamed image file.
+     * @param resolution the resolution for dividing the image.
+     * @return a 2D array containing estimated grayscale brightness values for each sub-image.
+     * @throws IOException if the image file cannot be decoded.
+     */
+    public static float[][] greyBrightnessesBySubsampling(StreamedImage image, int resolution) throws IOException {
+        return image.readBrightnesses(resolution, true);
+    }
+
+    /**
+     * Computes the shape of each sub-image of the given image with the specified resolution, as a 16 x 16 bit mask
+     * whose bits are set where the sub-image is bright (mean brightness of at least one half). Bit
+     * {@code row * 16 + col} of a mask is bit {@code (row * 16 + col) % 64} of its long {@code (row * 16 + col) / 64}.
+     *
+     * @param image      the input image.
+     * @param resolution the resolution for dividing the image.
+     * @return for each row of sub-images, the masks of its sub-images one after the other, 4 longs per sub-image.
+     */
+    public static long[][] tileMasksByResolution(Image image, int resolution) {
+        return TileMasks.compute(image, resolution);
+    }
+
+    /**
+     * Sets the number of threads used to compute brightness values. Results do not depend on it.
+     *
+     * @param parallelism the number of threads, 1 to compute everything on the calling thread.
+     */
+    public static void setParallelism(int parallelism) {
+        ParallelRange.setParallelism(parallelism);
+    }
+
+    /**
+     * Sets the amount of work, in pixels or tiles, below which a computation is not split between threads.
+     *
+     * @param units the sequential cutoff.
+     */
+    public static void setParallelCutoff(long units) {
+        ParallelRange.setCutoff(units);
+    }
     //endregion
     //region PRIVATE METHODS
 
     /**
-     * Calculates grayscale brightness values for each image in a 2D array of images.
+     * Calculates grayscale brightness values for each tile in a 2D array of tiles, splitting the tile rows between
+     * threads for large grids.
      *
-     * @param images the 2D array of images.
-     * @return a 2D array containing grayscale brightness values for each image.
+     * @param images the 2D array of tiles.
+     * @return a 2D array containing grayscale brightness values for each tile.
      */
-    private static float[][] getBrightnessArray(Image[][] images) {
+    private static float[][] getBrightnessArray(ImageTile[][] images) {
         int height = images.length;
         int width = images[ROW].length;
         float[][] brightnessArray = new float[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                brightnessArray[i][j] = getImgBrightness(images[i][j]);
+        ParallelRange.forEach(height, width, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < width; j++) {
+                    brightnessArray[i][j] = getImgBrightness(images[i][j]);
+                }
             }
-        }
+        });
         return brightnessArray;
     }
     //endregion
@@ -0,0 +1,193 @@
+package image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs loops over a range of indices (rows of pixels, rows of tiles, columns...) on a shared ForkJoinPool. The range is
+ * split in halves until a part costs less than the sequential cutoff, and each part is run by one thread, so small
+ * images never pay for the pool. Every index is processed by exactly the same code as in a sequential loop, and no
+ * two parts write to the same place, so results are identical whatever the number of threads.
+ * <p>
+ * The number of threads is read from the system property {@value #PARALLELISM_PROPERTY} (default: the number of
+ * available processors, 1 meaning sequential) and the cutoff, in units of work such as pixels, from
+ * {@value #CUTOFF_PROPERTY}. Both can also be changed at runtime through {@link ImageToBrightnessesFacade}.
+ */
+class ParallelRange {
+    //region CONSTANT VARIABLES
+    /**
+     * The name of the system property setting the number of threads.
+     */
+    static final String PARALLELISM_PROPERTY = "image.parallelism";
+
+    /**
+     * The name of the system property setting the sequential cutoff.
+     */
+    static final String CUTOFF_PROPERTY = "image.parallelCutoff";
+
+    /**
+     * The default sequential cutoff, in units of work.
+     */
+    private static final int DEFAULT_CUTOFF = 1 << 16;
+
+    /**
+     * The parallelism meaning that every loop runs on the calling thread.
+     */
+    private static final int SEQUENTIAL = 1;
+
+    /**
+     * The divisor splitting a range in two halves.
+     */
+    private static final int HALF = 2;
+    //endregion
+
+
+    //region STATIC VARIABLES
+    /**
+     * The pool running the parallel parts, or null when running sequentially.
+     */
+    private static ForkJoinPool pool;
+
+    /**
+     * The minimal amount of work worth running as a separate task.
+     */
+    private static volatile long cutoff = Long.getLong(CUTOFF_PROPERTY, DEFAULT_CUTOFF);
+
+    static {
+        setParallelism(Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+    //endregion
+
+
+    //region API
+
+    /**
+     * A loop body processing the indices of a sub-range.
+     */
+    @FunctionalInterface
+    interface RangeAction {
+        /**
+         * Processes the indices from {@code from} (inclusive) to {@code to} (exclusive).
+         *
+         * @param from the first index.
+         * @param to   the index after the last one.
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Sets the number of threads used by the parallel loops. Loops started afterwards use the new pool. The previous
+     * pool is not shut down, since a loop that read it just before the change may still be submitting to it; it
+     * finishes its work, and its threads, which are daemon threads, end on their own once they have been idle for the
+     * keep-alive time of the pool.
+     *
+     * @param parallelism the number of threads, 1 to run every loop sequentially.
+     */
+    static synchronized void setParallelism(int parallelism) {
+        if (parallelism < SEQUENTIAL) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        pool = parallelism == SEQUENTIAL ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Gets the number of threads used by the parallel loops.
+     *
+     * @return the number of threads, 1 when every loop runs sequentially.
+     */
+    static synchronized int getParallelism() {
+        return pool == null ? SEQUENTIAL : pool.getParallelism();
+    }
+
+    /**
+     * Sets the sequential cutoff: ranges costing less work than this are not split any further.
+     *
+     * @param units the cutoff, in units of work such as pixels.
+     */
+    static void setCutoff(long units) {
+        cutoff = units;
+    }
+
+    /**
+     * Runs the action over the indices 0 (inclusive) to count (exclusive), in parallel when the range is costly enough.
+     *
+     * @param count        the number of indices.
+     * @param costPerIndex the amount of work done for each index, e.g. the number of pixels in a row.
+     * @param action       the loop body.
+     */
+    static void forEach(int count, long costPerIndex, RangeAction action) {
+        ForkJoinPool currentPool;
+        synchronized (ParallelRange.class) {
+            currentPool = pool;
+        }
+        long grain = Math.max(1, cutoff / Math.max(1, costPerIndex));
+        if (currentPool == null || count <= grain) {
+            action.run(0, count);
+            return;
+        }
+        currentPool.invoke(new RangeTask(action, 0, count, grain));
+    }
+    //endregion
+
+
+    //region PRIVATE CLASSES
+
+    /**
+     * A fork-join task splitting its range in halves until it is no larger than the grain.
+     */
+    private static class RangeTask extends RecursiveAction {
+        /**
+         * The version of the serialized form, which fork-join tasks have as Serializable classes.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The loop body.
+         */
+        private final transient RangeAction action;
+
+        /**
+         * The first index of the range.
+         */
+        private final int from;
+
+        /**
+         * The index after the last one of the range.
+         */
+        private final int to;
+
+        /**
+         * The largest number of indices run without splitting.
+         */
+        private final long grain;
+
+        /**
+         * Constructs a task over a range.
+         *
+         * @param action the loop body.
+         * @param from   the first index.
+         * @param to     the index after the last one.
+         * @param grain  the largest number of indices run without splitting.
+         */
+        RangeTask(RangeAction action, int from, int to, long grain) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        /**
+         * Runs the range, or splits it in two halves and runs both.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                action.run(from, to);
+                return;
+            }
+            int middle = from + (to - from) / HALF;
+            invokeAll(new RangeTask(action, from, middle, grain), new RangeTask(action, middle, to, grain));
+        }
+    }
+    //endregion
+}
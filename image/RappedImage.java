@@ -1,13 +1,24 @@
 package image;
 
-import java.awt.*;
-
+import static image.ImageBrightnessCalculator.getGreyVal;
+
+/**
+ * A virtual view of an image padded with white to the nearest power of 2 in each dimension. The original image is
+ * centered inside the padded area, and the padding is never materialized: grey sums over any rectangle of the padded
+ * image are computed from the summed-area table of the original image, plus the grey value of white times the number
+ * of padding pixels the rectangle covers.
+ */
 class RappedImage {
     //region CONSTANT VARIABLES
     /**
-     * The color value for white.
+     * The packed RGB value for white.
+     */
+    private static final int WHITE = 0xFFFFFF;
+
+    /**
+     * The grey value of a white padding pixel.
      */
-    private static final int WHITE = 255;
+    static final float WHITE_GREY = getGreyVal(WHITE);
 
     /**
      * The base for calculating the closest power of 2.
@@ -15,118 +26,131 @@ class RappedImage {
     private static final int BASE_TWO = 2;
 
     /**
-     * represent the move 1 left of the list index
+     * constant represent half value divide
+     */
+    static final int HALF_VAL = 2;
+
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The summed-area table of the original image.
      */
-    private static final int LAST_INDEX_MOVE = 1;
+    private final SummedAreaTable table;
 
     /**
-     * constant represent half value divide
+     * The width of the padded image.
      */
-    private static final int HALF_VAL = 2;
+    private final int width;
 
+    /**
+     * The height of the padded image.
+     */
+    private final int height;
+
+    /**
+     * The number of padding rows above the original image.
+     */
+    private final int rowOffset;
+
+    /**
+     * The number of padding columns to the left of the original image.
+     */
+    private final int colOffset;
     //endregion
 
 
-    //region API
+    //region CONSTRUCTORS
 
     /**
-     * Resizes the image to the nearest power of 2.
+     * Constructs a padded view over the original image described by the given summed-area table.
      *
-     * @param image the original image.
-     * @return the resized image.
+     * @param table  the summed-area table of the original image.
+     * @param width  the width of the padded image.
+     * @param height the height of the padded image.
      */
-    static Image resize(Image image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int newWidth = findClosestPowerOf2(width);
-        int newHeight = findClosestPowerOf2(height);
-        Color[][] pixelArray = new Color[newHeight][newWidth];
-        rappedImage(image, pixelArray, height, newHeight, newWidth, width);
-        return new Image(pixelArray, newWidth, newHeight);
+    private RappedImage(SummedAreaTable table, int width, int height) {
+        this.table = table;
+        this.width = width;
+        this.height = height;
+        this.rowOffset = (height - table.getHeight()) / HALF_VAL;
+        this.colOffset = (width - table.getWidth()) / HALF_VAL;
     }
     //endregion
 
 
-    //region Private helper Methods
+    //region API
 
     /**
-     * Finds the closest power of 2 for a given number.
+     * Resizes the image to the nearest power of 2. The result is a view over the original image, so no pixels are
+     * copied and no padding pixels are allocated.
      *
-     * @param num the number for which to find the closest power of 2.
-     * @return the closest power of 2.
+     * @param image the original image.
+     * @return the resized image.
      */
-    private static int findClosestPowerOf2(int num) {
-        double div = Math.log(num) / Math.log(BASE_TWO);
-        int ceilVal = (int) Math.ceil(div);
-        return (int) Math.pow(BASE_TWO, ceilVal);
+    static RappedImage resize(Image image) {
+        int newWidth = findClosestPowerOf2(image.getWidth());
+        int newHeight = findClosestPowerOf2(image.getHeight());
+        return new RappedImage(image.getSummedAreaTable(), newWidth, newHeight);
     }
 
     /**
-     * Adds rows of white pixels to the pixel array to match the new height.
+     * Gets the width of the padded image.
      *
-     * @param pixelArray the original pixel array.
-     * @param height     the original height.
-     * @param newHeight  the new height.
-     * @param newWidth   the new width.
+     * @return the width in pixels.
      */
-    private static void addRows(Color[][] pixelArray, int height, int newHeight, int newWidth) {
-        for (int i = 0; i < (newHeight - height) / HALF_VAL; i++) {
-            for (int j = 0; j < newWidth; j++) {
-                pixelArray[i][j] = new Color(WHITE, WHITE, WHITE);
-                pixelArray[newHeight - i - LAST_INDEX_MOVE][j] = new Color(WHITE, WHITE, WHITE);
-            }
-        }
+    int getWidth() {
+        return width;
     }
 
     /**
-     * Adds columns of white pixels to the pixel array to match the new width.
+     * Gets the height of the padded image.
      *
-     * @param pixelArray the original pixel array.
-     * @param width      the original width.
-     * @param newWidth   the new width.
-     * @param newHeight  the new height.
+     * @return the height in pixels.
      */
-    private static void addCols(Color[][] pixelArray, int width, int newWidth, int newHeight) {
-        for (int i = 0; i < (newWidth - width) / HALF_VAL; i++) {
-            for (int j = 0; j < newHeight; j++) {
-                pixelArray[j][i] = new Color(WHITE, WHITE, WHITE);
-                pixelArray[j][newWidth - i - LAST_INDEX_MOVE] = new Color(WHITE, WHITE, WHITE);
-            }
-        }
+    int getHeight() {
+        return height;
     }
 
     /**
-     * Fills the original image into the resized pixel array.
+     * Gets the sum of the grey values over a rectangle of the padded image, where every pixel outside the original
+     * image counts as white.
      *
-     * @param image      the original image.
-     * @param pixelArray the resized pixel array.
-     * @param width      the original width.
-     * @param newWidth   the new width.
-     * @param height     the original height.
-     * @param newHeight  the new height.
+     * @param startRow the first row of the rectangle in the padded image.
+     * @param startCol the first column of the rectangle in the padded image.
+     * @param rowCount the number of rows in the rectangle.
+     * @param colCount the number of columns in the rectangle.
+     * @return the sum of the grey values of the pixels inside the rectangle.
      */
-    private static void fillOriginalImage(Image image, Color[][] pixelArray, int width, int newWidth,
-                                          int height, int newHeight) {
-        for (int i = (newHeight - height) / HALF_VAL; i < newHeight - (newHeight - height) / 2; i++) {
-            for (int j = (newWidth - width) / HALF_VAL; j < newWidth - (newWidth - width) / 2; j++) {
-                pixelArray[i][j] = image.getPixel(i - (newHeight - height) / 2, j -
-                        (newWidth - width) / 2);
-            }
+    double getSum(int startRow, int startCol, int rowCount, int colCount) {
+        // Clip the rectangle to the original image, in the original image's coordinates.
+        int top = Math.max(startRow - rowOffset, 0);
+        int left = Math.max(startCol - colOffset, 0);
+        int bottom = Math.min(startRow + rowCount - rowOffset, table.getHeight());
+        int right = Math.min(startCol + colCount - colOffset, table.getWidth());
+        if (top >= bottom || left >= right) {
+            return (double) rowCount * colCount * WHITE_GREY;
         }
+        long insideCount = (long) (bottom - top) * (right - left);
+        long paddingCount = (long) rowCount * colCount - insideCount;
+        return table.getSum(top, left, bottom - top, right - left) + paddingCount * (double) WHITE_GREY;
     }
+    //endregion
+
 
+    //region Private helper Methods
 
     /**
-     * Resizes the image to the nearest power of 2. modify in place the pixel array to match the new size of the
-     * image.
+     * Finds the closest power of 2 for a given number.
      *
-     * @param image the original image.
+     * @param num the number for which to find the closest power of 2.
+     * @return the closest power of 2.
      */
-    private static void rappedImage(Image image, Color[][] pixelArray, int height, int newHeight,
-                                    int newWidth, int width) {
-        addRows(pixelArray, height, newHeight, newWidth);
-        addCols(pixelArray, width, newWidth, newHeight);
-        fillOriginalImage(image, pixelArray, width, newWidth, height, newHeight);
+    static int findClosestPowerOf2(int num) {
+        double div = Math.log(num) / Math.log(BASE_TWO);
+        int ceilVal = (int) Math.ceil(div);
+        return (int) Math.pow(BASE_TWO, ceilVal);
     }
     //endregion
 }
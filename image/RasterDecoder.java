@@ -0,0 +1,210 @@
+package image;
+
+import java.awt.image.*;
+
+/**
+ * Decodes the pixels of a BufferedImage into a packed RGB array (0xRRGGBB, one int per pixel, row-major). The common
+ * image types produced by ImageIO are read straight from the raster's data buffer, so the color model is not consulted
+ * once per pixel. Any other layout falls back to the bulk getRGB call of the BufferedImage.
+ */
+class RasterDecoder {
+    //region CONSTANT VARIABLES
+    /**
+     * Mask keeping the red, green and blue bytes of a packed pixel and dropping the alpha byte.
+     */
+    private static final int RGB_MASK = 0xFFFFFF;
+
+    /**
+     * Mask converting a signed byte sample to its unsigned value.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * The number of distinct values of an 8 bit sample.
+     */
+    private static final int BYTE_VALUES = 256;
+
+    /**
+     * The bit offset of the red channel in a packed pixel.
+     */
+    private static final int RED_SHIFT = 16;
+
+    /**
+     * The bit offset of the green channel in a packed pixel.
+     */
+    private static final int GREEN_SHIFT = 8;
+
+    /**
+     * The number of bands of a 3 byte BGR raster.
+     */
+    private static final int BGR_BANDS = 3;
+
+    /**
+     * The band holding the red sample of an RGB raster.
+     */
+    private static final int RED_BAND = 0;
+
+    /**
+     * The band holding the green sample of an RGB raster.
+     */
+    private static final int GREEN_BAND = 1;
+
+    /**
+     * The band holding the blue sample of an RGB raster.
+     */
+    private static final int BLUE_BAND = 2;
+
+    /**
+     * The band of a single banded raster.
+     */
+    private static final int SINGLE_BAND = 0;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Decodes all the pixels of the given image into a packed RGB array.
+     *
+     * @param im the decoded image.
+     * @return the packed RGB values of the image in row-major order.
+     */
+    static int[] decode(BufferedImage im) {
+        int width = im.getWidth();
+        int height = im.getHeight();
+        Raster raster = im.getRaster();
+        // Sub-rasters are not produced by ImageIO, and the fast paths assume the raster starts at the buffer origin.
+        if (raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0) {
+            switch (im.getType()) {
+                case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB -> {
+                    return decodeIntRgb(raster, width, height);
+                }
+                case BufferedImage.TYPE_3BYTE_BGR -> {
+                    return decodeThreeByteBgr(im, raster, width, height);
+                }
+                case BufferedImage.TYPE_BYTE_GRAY -> {
+                    return decodeByteGray(im, raster, width, height);
+                }
+                default -> {
+                }
+            }
+        }
+        return decodeGeneric(im, width, height);
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Decodes an image whose pixels are already packed into ints, by copying the rows and dropping the alpha byte.
+     *
+     * @param raster the raster of the image.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the packed RGB values of the image.
+     */
+    private static int[] decodeIntRgb(Raster raster, int width, int height) {
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+        int[] data = dataBuffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < height; i++) {
+            int src = dataBuffer.getOffset() + i * scanlineStride;
+            int dst = i * width;
+            for (int j = 0; j < width; j++) {
+                pixels[dst + j] = data[src + j] & RGB_MASK;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Decodes an image stored as interleaved blue, green and red bytes.
+     *
+     * @param im     the image.
+     * @param raster the raster of the image.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the packed RGB values of the image.
+     */
+    private static int[] decodeThreeByteBgr(BufferedImage im, Raster raster, int width, int height) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] data = dataBuffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        if (bandOffsets.length != BGR_BANDS) {
+            return decodeGeneric(im, width, height);
+        }
+        int redOffset = bandOffsets[RED_BAND];
+        int greenOffset = bandOffsets[GREEN_BAND];
+        int blueOffset = bandOffsets[BLUE_BAND];
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < height; i++) {
+            int src = dataBuffer.getOffset() + i * scanlineStride;
+            int dst = i * width;
+            for (int j = 0; j < width; j++, src += pixelStride) {
+                pixels[dst + j] = ((data[src + redOffset] & BYTE_MASK) << RED_SHIFT) |
+                        ((data[src + greenOffset] & BYTE_MASK) << GREEN_SHIFT) |
+                        (data[src + blueOffset] & BYTE_MASK);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Decodes a single banded grey image. The grey color space of such images is linear, so each of the 256 grey
+     * levels is converted to sRGB once through the color model, exactly as getRGB would, and then looked up per pixel.
+     *
+     * @param im     the image.
+     * @param raster the raster of the image.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the packed RGB values of the image.
+     */
+    private static int[] decodeByteGray(BufferedImage im, Raster raster, int width, int height) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] data = dataBuffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int bandOffset = sampleModel.getBandOffsets()[SINGLE_BAND];
+        int[] greyToRgb = new int[BYTE_VALUES];
+        ColorModel colorModel = im.getColorModel();
+        byte[] sample = new byte[1];
+        for (int grey = 0; grey < BYTE_VALUES; grey++) {
+            sample[SINGLE_BAND] = (byte) grey;
+            greyToRgb[grey] = colorModel.getRGB(sample) & RGB_MASK;
+        }
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < height; i++) {
+            int src = dataBuffer.getOffset() + i * scanlineStride + bandOffset;
+            int dst = i * width;
+            for (int j = 0; j < width; j++, src += pixelStride) {
+                pixels[dst + j] = greyToRgb[data[src] & BYTE_MASK];
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Decodes an image of any type through the bulk getRGB call of the BufferedImage.
+     *
+     * @param im     the image.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the packed RGB values of the image.
+     */
+    private static int[] decodeGeneric(BufferedImage im, int width, int height) {
+        int[] pixels = im.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= RGB_MASK;
+        }
+        return pixels;
+    }
+
+    //endregion
+}
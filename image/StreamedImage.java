@@ -0,0 +1,630 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import static image.ImageBrightnessCalculator.getBrightness;
+import static image.ImageBrightnessCalculator.getGreyVal;
+import static image.RappedImage.*;
+
+/**
+ * An image file that is never decoded as a whole. Only the header is read when the image is opened; brightness values
+ * are computed by decoding one horizontal band of tile rows at a time through an ImageReader source region, adding the
+ * grey values of the band to per-tile sums and discarding the band, so peak memory is bounded by the band size and the
+ * tile grid rather than by the image size. Padding to the nearest power of 2 is accounted for exactly as in
+ * {@link ImageToBrightnessesFacade#greyBrightnessesByResolution(Image, int)}, so both paths agree up to float rounding.
+ * <p>
+ * Formats such as JPEG and PNG cannot seek to a row, so every band is decoded from the top of the file, and the cost
+ * of a read grows with the square of the number of bands. The bands are therefore sized from the heap that is still
+ * free, the same share of it that {@link #fitsInMemory()} allows a whole image: an image is streamed in a single band
+ * whenever the heap allows it, and in as few bands as the heap allows otherwise.
+ */
+public class StreamedImage {
+    //region CONSTANT VARIABLES
+    /**
+     * The estimated number of heap bytes a decoded pixel costs on the in-memory path: the decoded BufferedImage, the
+     * packed pixel array and the summed-area table.
+     */
+    private static final long DECODED_BYTES_PER_PIXEL = 16;
+
+    /**
+     * The fraction of the maximal heap an image may take to be decoded in memory, as a divisor.
+     */
+    private static final long HEAP_SHARE = 2;
+
+    /**
+     * The estimated number of heap bytes a pixel of a band costs: the decoded BufferedImage and the packed samples.
+     */
+    private static final long BAND_BYTES_PER_PIXEL = 8;
+
+    /**
+     * The number of pixels a band may always hold, however little heap is free.
+     */
+    private static final long MIN_BAND_PIXELS = 4L * 1024 * 1024;
+
+    /**
+     * The minimal number of samples per tile side when subsampling.
+     */
+    private static final int MIN_SAMPLES_PER_SIDE = 8;
+
+    /**
+     * The index of the only image read from a file.
+     */
+    private static final int IMAGE_INDEX = 0;
+
+    /**
+     * The size of the buffer used to hash the file content.
+     */
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The initial value of the file fingerprint.
+     */
+    private static final long FINGERPRINT_SEED = 0xCBF29CE484222325L;
+
+    /**
+     * The odd constant the fingerprint is multiplied by after each byte is mixed in.
+     */
+    private static final long MIX_PRIME = 0x100000001B3L;
+
+    /**
+     * The odd constant used by the final avalanche of the fingerprint.
+     */
+    private static final long AVALANCHE_PRIME = 0xFF51AFD7ED558CCDL;
+
+    /**
+     * The shift used by the final avalanche of the fingerprint.
+     */
+    private static final int AVALANCHE_SHIFT = 33;
+
+    /**
+     * Mask converting a signed byte to its unsigned value.
+     */
+    private static final int BYTE_MASK = 0xFF;
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The path of the image file.
+     */
+    private final String filename;
+
+    /**
+     * The width of the image in pixels.
+     */
+    private final int width;
+
+    /**
+     * The height of the image in pixels.
+     */
+    private final int height;
+
+    /**
+     * The hash of the file content, computed on first use.
+     */
+    private Long fingerprint;
+    //endregion
+
+
+    //region CONSTRUCTORS
+
+    /**
+     * Constructs a handle over an image file whose header was already read.
+     *
+     * @param filename the path of the image file.
+     * @param width    the width of the image in pixels.
+     * @param height   the height of the image in pixels.
+     */
+    private StreamedImage(String filename, int width, int height) {
+        this.filename = filename;
+        this.width = width;
+        this.height = height;
+    }
+    //endregion
+
+
+    //region API
+
+    /**
+     * Opens an image file, reading only its header.
+     *
+     * @param filename the path of the image file.
+     * @return the handle over the image file.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static StreamedImage open(String filename) throws IOException {
+        try (ImageInputStream stream = openStream(filename)) {
+            ImageReader reader = getReader(stream);
+            try {
+                reader.setInput(stream, true, true);
+                return new StreamedImage(filename, reader.getWidth(IMAGE_INDEX), reader.getHeight(IMAGE_INDEX));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the whole image can comfortably be decoded in memory as an {@link Image}, given the maximal heap
+     * size of this JVM.
+     *
+     * @return true if the image should be decoded in memory, false if it should be streamed.
+     */
+    public boolean fitsInMemory() {
+        return getDecodedBytes() <= getInMemoryBudget();
+    }
+
+    /**
+     * Estimates the number of heap bytes the image costs once decoded in memory, until its brightness values are
+     * computed.
+     *
+     * @return the estimated number of bytes.
+     */
+    public long getDecodedBytes() {
+        return (long) width * height * DECODED_BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Gets the number of heap bytes decoded images may take, the share of the maximal heap size of this JVM that
+     * {@link #fitsInMemory()} allows a single image. Callers decoding several images at once share it between them.
+     *
+     * @return the number of bytes.
+     */
+    public static long getInMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / HEAP_SHARE;
+    }
+
+    /**
+     * Decodes the whole image in memory, as {@link Image#Image(String)} does. The reader is asked to stop as soon as
+     * the given condition holds, so that a decode that is no longer needed releases its memory early instead of
+     * running to the end.
+     *
+     * @param cancelled the condition under which the decode is abandoned, checked as the decode progresses.
+     * @return the decoded image.
+     * @throws IOException           if the file cannot be decoded.
+     * @throws CancellationException if the decode was abandoned.
+     */
+    public Image decode(BooleanSupplier cancelled) throws IOException {
+        try (ImageInputStream stream = openStream(filename)) {
+            ImageReader reader = getReader(stream);
+            try {
+                reader.setInput(stream, true, true);
+                reader.addIIOReadProgressListener(new CancellationListener(cancelled));
+                BufferedImage decoded = reader.read(IMAGE_INDEX);
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException("Decoding " + filename + " was cancelled");
+                }
+                return new Image(RasterDecoder.decode(decoded), decoded.getWidth(), decoded.getHeight());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Gets the path of the image file.
+     *
+     * @return the path.
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Gets the width of the image in pixels.
+     *
+     * @return the width of the image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image in pixels.
+     *
+     * @return the height of the image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets a 64-bit hash of the content of the image file. The file is read once, sequentially, on the first call.
+     *
+     * @return the content fingerprint of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public synchronized long getFingerprint() throws IOException {
+        if (fingerprint == null) {
+            fingerprint = hashFile(filename);
+        }
+        return fingerprint;
+    }
+    //endregion
+
+
+    //region PACKAGE-PRIVATE METHODS
+
+    /**
+     * Computes the brightness value of every tile of the image padded to the nearest power of 2, decoding the file
+     * one band of tile rows at a time.
+     *
+     * @param resolution the number of tiles per row.
+     * @param subsample  whether to decode only a grid of samples of each tile instead of every pixel, see
+     *                   {@link ImageToBrightnessesFacade#greyBrightnessesBySubsampling(StreamedImage, int)}.
+     * @return a 2D array containing grayscale brightness values for each tile.
+     * @throws IOException if the file cannot be decoded.
+     */
+    float[][] readBrightnesses(int resolution, boolean subsample) throws IOException {
+        int paddedWidth = findClosestPowerOf2(width);
+        int paddedHeight = findClosestPowerOf2(height);
+        TileGrid grid = new TileGrid(paddedWidth / resolution, (paddedHeight - height) / HALF_VAL,
+                (paddedWidth - width) / HALF_VAL,
+                subsample ? Integer.highestOneBit(Math.max(1, paddedWidth / resolution / MIN_SAMPLES_PER_SIDE)) : 1);
+        int rows = paddedHeight / grid.tileSize;
+        double[][] sums = new double[rows][resolution];
+        int[][] counts = grid.period == 1 ? null : new int[rows][resolution];
+        long bandCost = (long) width * grid.tileSize / ((long) grid.period * grid.period);
+        int bandTileRows = (int) Math.min(rows, Math.max(1, bandPixels() / Math.max(1, bandCost)));
+        try (ImageInputStream stream = openStream(filename)) {
+            ImageReader reader = getReader(stream);
+            try {
+                reader.setInput(stream, false, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                for (int firstTileRow = 0; firstTileRow < rows; firstTileRow += bandTileRows) {
+                    int lastTileRow = Math.min(rows, firstTileRow + bandTileRows);
+                    // The rows of the original image covered by this band of tiles; bands of padding are skipped.
+                    int top = Math.max(firstTileRow * grid.tileSize - grid.rowOffset, 0);
+                    int bottom = Math.min(lastTileRow * grid.tileSize - grid.rowOffset, height);
+                    // The first sampled row and column, placed at the centers of the period x period cells of the
+                    // padded image, so that cells never straddle two tiles.
+                    int sampleRow = grid.firstSample(grid.rowOffset + top);
+                    int sampleCol = grid.firstSample(grid.colOffset);
+                    if (top + sampleRow >= bottom || sampleCol >= width) {
+                        continue;
+                    }
+                    param.setSourceRegion(new Rectangle(0, top, width, bottom - top));
+                    param.setSourceSubsampling(grid.period, grid.period, sampleCol, sampleRow);
+                    BufferedImage band = reader.read(IMAGE_INDEX, param);
+                    addBand(RasterDecoder.decode(band), band.getWidth(), top + sampleRow, bottom, sampleCol, grid,
+                            sums, counts);
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+        return toBrightnesses(sums, counts, grid);
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Adds the grey values of the samples of a decoded band to the sums of the tiles they fall in. Without
+     * subsampling every pixel is a sample. The tile rows of the band are split between threads; each tile row is
+     * summed in row order, so the result does not depend on the number of threads.
+     *
+     * @param samples    the packed samples of the band.
+     * @param bandWidth  the number of samples in a row of the band.
+     * @param firstRow   the image row of the first row of samples.
+     * @param bottom     the image row after the last one of the band.
+     * @param firstCol   the image column of the first column of samples.
+     * @param grid       the tile grid.
+     * @param sums       the grey sums of the tiles.
+     * @param counts     the number of samples of each tile, or null when every pixel is sampled.
+     */
+    private static void addBand(int[] samples, int bandWidth, int firstRow, int bottom, int firstCol, TileGrid grid,
+                                double[][] sums, int[][] counts) {
+        int tileSize = grid.tileSize;
+        int period = grid.period;
+        int firstTileRow = (firstRow + grid.rowOffset) / tileSize;
+        int tileRowCount = (bottom - 1 + grid.rowOffset) / tileSize - firstTileRow + 1;
+        ParallelRange.forEach(tileRowCount, (long) tileSize * bandWidth / period, (from, to) -> {
+            for (int t = from; t < to; t++) {
+                int tileRow = firstTileRow + t;
+                int rowStart = Math.max(tileRow * tileSize - grid.rowOffset, firstRow);
+                int rowEnd = Math.min((tileRow + 1) * tileSize - grid.rowOffset, bottom);
+                double[] tileSums = sums[tileRow];
+                int[] tileCounts = counts == null ? null : counts[tileRow];
+                // Skip to the first sampled row inside this tile row.
+                int firstSampleRow = firstRow + Math.floorDiv(rowStart - firstRow + period - 1, period) * period;
+                for (int row = firstSampleRow; row < rowEnd; row += period) {
+                    int sampleStart = (row - firstRow) / period * bandWidth;
+                    for (int col = 0; col < bandWidth; col++) {
+                        int tileCol = (firstCol + col * period + grid.colOffset) / tileSize;
+                        tileSums[tileCol] += getGreyVal(samples[sampleStart + col]);
+                        if (tileCounts != null) {
+                            tileCounts[tileCol]++;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Turns the grey sums of the tiles into brightness values, counting every padding pixel of a tile as white. When
+     * the tiles were subsampled, the image part of each tile is estimated as the mean of its samples; an image part too
+     * thin to hold any sample is counted as white.
+     *
+     * @param sums   the grey sums of the image pixels, or of the samples, of every tile.
+     * @param counts the number of samples of each tile, or null when every pixel was sampled.
+     * @param grid   the tile grid.
+     * @return the brightness value of every tile.
+     */
+    private float[][] toBrightnesses(double[][] sums, int[][] counts, TileGrid grid) {
+        int tileSize = grid.tileSize;
+        long area = (long) tileSize * tileSize;
+        float[][] brightnesses = new float[sums.length][];
+        for (int i = 0; i < sums.length; i++) {
+            brightnesses[i] = new float[sums[i].length];
+            int insideRows = overlap(i * tileSize - grid.rowOffset, tileSize, height);
+            for (int j = 0; j < sums[i].length; j++) {
+                long inside = (long) insideRows * overlap(j * tileSize - grid.colOffset, tileSize, width);
+                double insideSum = sums[i][j];
+                if (counts != null) {
+                    insideSum = counts[i][j] == 0 ? inside * (double) WHITE_GREY : insideSum / counts[i][j] * inside;
+                }
+                brightnesses[i][j] = getBrightness(insideSum + (area - inside) * (double) WHITE_GREY, area);
+            }
+        }
+        return brightnesses;
+    }
+
+    /**
+     * Computes how many pixels a band may hold, from the heap that is still free.
+     *
+     * @return the maximal number of decoded pixels per band.
+     */
+    private static long bandPixels() {
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return Math.max(MIN_BAND_PIXELS, freeHeap / HEAP_SHARE / BAND_BYTES_PER_PIXEL);
+    }
+
+    /**
+     * Computes how many of the indices of a tile fall inside the image along one axis.
+     *
+     * @param start    the first index of the tile, in image coordinates.
+     * @param tileSize the size of the tile.
+     * @param limit    the size of the image along the axis.
+     * @return the number of indices of the tile inside the image.
+     */
+    private static int overlap(int start, int tileSize, int limit) {
+        return Math.max(0, Math.min(start + tileSize, limit) - Math.max(start, 0));
+    }
+
+    /**
+     * Opens an image input stream over a file.
+     *
+     * @param filename the path of the file.
+     * @return the stream.
+     * @throws IOException if the file cannot be opened.
+     */
+    private static ImageInputStream openStream(String filename) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(new File(filename));
+        if (stream == null) {
+            throw new IOException("Cannot open image file " + filename);
+        }
+        return stream;
+    }
+
+    /**
+     * Finds a reader for the image in a stream.
+     *
+     * @param stream the stream.
+     * @return the reader.
+     * @throws IOException if no reader can decode the stream.
+     */
+    private static ImageReader getReader(ImageInputStream stream) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        return readers.next();
+    }
+
+    /**
+     * Hashes the content of a file into 64 bits.
+     *
+     * @param filename the path of the file.
+     * @return the hash of the file content.
+     * @throws IOException if the file cannot be read.
+     */
+    private static long hashFile(String filename) throws IOException {
+        long hash = FINGERPRINT_SEED;
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(new File(filename).toPath())) {
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                for (int i = 0; i < read; i++) {
+                    hash = (hash ^ (buffer[i] & BYTE_MASK)) * MIX_PRIME;
+                }
+            }
+        }
+        hash ^= hash >>> AVALANCHE_SHIFT;
+        hash *= AVALANCHE_PRIME;
+        hash ^= hash >>> AVALANCHE_SHIFT;
+        return hash;
+    }
+    //endregion
+
+
+    //region PRIVATE CLASSES
+
+    /**
+     * A listener aborting a read once a condition holds. Readers report their progress every few rows, and stop at
+     * their next check after being aborted.
+     */
+    private static class CancellationListener implements IIOReadProgressListener {
+        /**
+         * The condition under which the read is aborted.
+         */
+        private final BooleanSupplier cancelled;
+
+        /**
+         * Constructs a listener.
+         *
+         * @param cancelled the condition under which the read is aborted.
+         */
+        CancellationListener(BooleanSupplier cancelled) {
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * Aborts the read if the condition holds.
+         *
+         * @param source         the reader.
+         * @param percentageDone the progress of the read.
+         */
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            if (cancelled.getAsBoolean()) {
+                source.abort();
+            }
+        }
+
+        /**
+         * Aborts the read before it starts if the condition already holds.
+         *
+         * @param source     the reader.
+         * @param imageIndex the index of the image read.
+         */
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+            imageProgress(source, 0);
+        }
+
+        /**
+         * Ignores the start of a sequence of images.
+         *
+         * @param source   the reader.
+         * @param minIndex the index of the first image.
+         */
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        /**
+         * Ignores the end of a sequence of images.
+         *
+         * @param source the reader.
+         */
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        /**
+         * Ignores the end of the read.
+         *
+         * @param source the reader.
+         */
+        @Override
+        public void imageComplete(ImageReader source) {
+        }
+
+        /**
+         * Ignores the start of a thumbnail, which is never read.
+         *
+         * @param source         the reader.
+         * @param imageIndex     the index of the image.
+         * @param thumbnailIndex the index of the thumbnail.
+         */
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        /**
+         * Ignores the progress of a thumbnail, which is never read.
+         *
+         * @param source         the reader.
+         * @param percentageDone the progress of the thumbnail.
+         */
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        /**
+         * Ignores the end of a thumbnail, which is never read.
+         *
+         * @param source the reader.
+         */
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+
+        /**
+         * Ignores the abort of the read, which is detected by the caller through the condition.
+         *
+         * @param source the reader.
+         */
+        @Override
+        public void readAborted(ImageReader source) {
+        }
+    }
+
+    /**
+     * The geometry of the tiles of the padded image and of the samples taken in them.
+     */
+    private static class TileGrid {
+        /**
+         * The size of a tile in pixels.
+         */
+        private final int tileSize;
+
+        /**
+         * The number of padding rows above the image.
+         */
+        private final int rowOffset;
+
+        /**
+         * The number of padding columns left of the image.
+         */
+        private final int colOffset;
+
+        /**
+         * The distance in pixels between two samples along each axis, 1 when every pixel is sampled.
+         */
+        private final int period;
+
+        /**
+         * Constructs a tile grid.
+         *
+         * @param tileSize  the size of a tile in pixels.
+         * @param rowOffset the number of padding rows above the image.
+         * @param colOffset the number of padding columns left of the image.
+         * @param period    the distance in pixels between two samples along each axis.
+         */
+        TileGrid(int tileSize, int rowOffset, int colOffset, int period) {
+            this.tileSize = tileSize;
+            this.rowOffset = rowOffset;
+            this.colOffset = colOffset;
+            this.period = period;
+        }
+
+        /**
+         * Finds the offset from a position of the first sample at or after it, samples being taken at the centers of
+         * the period x period cells of the padded image.
+         *
+         * @param paddedPosition the position, in padded image coordinates.
+         * @return the offset of the first sample, between 0 and period - 1.
+         */
+        int firstSample(int paddedPosition) {
+            return Math.floorMod(period / HALF_VAL - paddedPosition, period);
+        }
+    }
+    //endregion
+}
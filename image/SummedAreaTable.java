@@ -0,0 +1,135 @@
+package image;
+
+import static image.ImageBrightnessCalculator.getGreyVal;
+
+/**
+ * A summed-area table (integral image) of the grey values of an image. Entry (i, j) of the table holds the sum of the
+ * grey values of all the pixels above and to the left of pixel (i, j), so the sum over any rectangle of the image is
+ * found with four lookups, no matter how large the rectangle is. The table is built once, in two passes that can both
+ * run in parallel: first the prefix sum of every row, then the prefix sum of every column of row sums. Sums are kept
+ * as doubles so that large regions do not lose precision.
+ */
+class SummedAreaTable {
+    //region CONSTANT VARIABLES
+    /**
+     * The extra row and column of zeros at the top and left of the table.
+     */
+    private static final int BORDER = 1;
+    //endregion
+
+    //region PRIVATE VARIABLES
+    /**
+     * The table entries in row-major order, with a leading row and column of zeros.
+     */
+    private final double[] sums;
+
+    /**
+     * The width of the table in entries, which is the image width plus one.
+     */
+    private final int stride;
+
+    /**
+     * The width of the image in pixels.
+     */
+    private final int width;
+
+    /**
+     * The height of the image in pixels.
+     */
+    private final int height;
+    //endregion
+
+
+    //region CONSTRUCTORS
+
+    /**
+     * Builds the summed-area table of the grey values of the given image.
+     *
+     * @param image the image.
+     */
+    SummedAreaTable(Image image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        stride = width + BORDER;
+        sums = new double[(height + BORDER) * stride];
+        int[] pixels = image.getPixels();
+        ParallelRange.forEach(height, width, (from, to) -> sumRows(pixels, from, to));
+        ParallelRange.forEach(width, height, this::sumColumns);
+    }
+    //endregion
+
+
+    //region API
+
+    /**
+     * Gets the width of the image the table was built from.
+     *
+     * @return the width in pixels.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image the table was built from.
+     *
+     * @return the height in pixels.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the sum of the grey values over a rectangle of the image.
+     *
+     * @param startRow  the first row of the rectangle.
+     * @param startCol  the first column of the rectangle.
+     * @param rowCount  the number of rows in the rectangle.
+     * @param colCount  the number of columns in the rectangle.
+     * @return the sum of the grey values of the pixels inside the rectangle.
+     */
+    double getSum(int startRow, int startCol, int rowCount, int colCount) {
+        int top = startRow * stride + startCol;
+        int bottom = (startRow + rowCount) * stride + startCol;
+        return sums[bottom + colCount] - sums[bottom] - sums[top + colCount] + sums[top];
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Fills a range of rows of the table with the prefix sums of the grey values of each row.
+     *
+     * @param pixels the packed pixels of the image.
+     * @param from   the first image row.
+     * @param to     the image row after the last one.
+     */
+    private void sumRows(int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double rowSum = 0;
+            int current = (i + BORDER) * stride + BORDER;
+            for (int j = 0; j < width; j++) {
+                rowSum += getGreyVal(pixels[i * width + j]);
+                sums[current + j] = rowSum;
+            }
+        }
+    }
+
+    /**
+     * Accumulates a range of columns of row prefix sums from top to bottom, turning them into rectangle sums.
+     *
+     * @param from the first image column.
+     * @param to   the image column after the last one.
+     */
+    private void sumColumns(int from, int to) {
+        for (int i = BORDER; i < height; i++) {
+            int above = i * stride + BORDER;
+            int current = above + stride;
+            for (int j = from; j < to; j++) {
+                sums[current + j] += sums[above + j];
+            }
+        }
+    }
+    //endregion
+}
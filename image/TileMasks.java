@@ -0,0 +1,149 @@
+package image;
+
+import static image.ImageBrightnessCalculator.getBrightness;
+import static image.RappedImage.resize;
+
+/**
+ * Computes the shape of each tile of an image as a 16 x 16 bit mask, the same grid as the rendered characters, so that
+ * tiles can be compared with characters pixel by pixel. The tile is divided into 16 x 16 cells, and the bit of a cell
+ * is set when the cell is bright, that is when its mean brightness is at least one half. Cell means come from the
+ * summed-area table of the image, so a mask costs 256 lookups whatever the tile size. Tiles smaller than 16 pixels
+ * repeat each of their pixels over several cells, so their masks are built from one lookup per pixel instead, row by
+ * row: a 1 pixel tile, at the finest resolution, costs a single lookup.
+ * <p>
+ * A mask is stored as 4 longs: bit {@code row * 16 + col} of the mask is bit {@code (row * 16 + col) % 64} of long
+ * {@code (row * 16 + col) / 64}.
+ */
+class TileMasks {
+    //region CONSTANT VARIABLES
+    /**
+     * The number of cells along each side of a mask.
+     */
+    static final int MASK_SIDE = 16;
+
+    /**
+     * The number of longs holding a mask.
+     */
+    static final int MASK_WORDS = MASK_SIDE * MASK_SIDE / Long.SIZE;
+
+    /**
+     * The brightness from which a cell is bright.
+     */
+    private static final float BRIGHT_THRESHOLD = 0.5f;
+
+    /**
+     * The shift converting a bit index to the index of its long.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * The mask extracting the bit offset inside its long from a bit index.
+     */
+    private static final int BIT_MASK = Long.SIZE - 1;
+
+    /**
+     * The index of a pixel row or column before the first one.
+     */
+    private static final int NO_PIXEL = -1;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Computes the masks of the tiles of an image padded to the nearest power of 2, for the given resolution.
+     *
+     * @param image      the input image.
+     * @param resolution the number of tiles along the width of the padded image.
+     * @return for each row of tiles, the masks of its tiles one after the other, MASK_WORDS longs per tile.
+     */
+    static long[][] compute(Image image, int resolution) {
+        RappedImage resized = resize(image);
+        int tileSize = resized.getWidth() / resolution;
+        int rows = resized.getHeight() / tileSize;
+        long[][] masks = new long[rows][resolution * MASK_WORDS];
+        ParallelRange.forEach(rows, (long) resolution * MASK_SIDE * MASK_SIDE, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < resolution; j++) {
+                    computeMask(resized, i * tileSize, j * tileSize, tileSize, masks[i], j * MASK_WORDS);
+                }
+            }
+        });
+        return masks;
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Computes the mask of one tile.
+     *
+     * @param image    the padded image.
+     * @param startRow the first row of the tile.
+     * @param startCol the first column of the tile.
+     * @param tileSize the size of the tile.
+     * @param masks    the array receiving the mask.
+     * @param offset   the index of the first long of the mask in the array.
+     */
+    private static void computeMask(RappedImage image, int startRow, int startCol, int tileSize, long[] masks,
+                                    int offset) {
+        if (tileSize < MASK_SIDE) {
+            computeSmallMask(image, startRow, startCol, tileSize, masks, offset);
+            return;
+        }
+        int cellSize = Math.max(1, tileSize / MASK_SIDE);
+        long cellPixels = (long) cellSize * cellSize;
+        for (int row = 0; row < MASK_SIDE; row++) {
+            int cellRow = startRow + row * tileSize / MASK_SIDE;
+            for (int col = 0; col < MASK_SIDE; col++) {
+                int cellCol = startCol + col * tileSize / MASK_SIDE;
+                double greySum = image.getSum(cellRow, cellCol, cellSize, cellSize);
+                if (getBrightness(greySum, cellPixels) >= BRIGHT_THRESHOLD) {
+                    int bit = row * MASK_SIDE + col;
+                    masks[offset + (bit >>> WORD_SHIFT)] |= 1L << (bit & BIT_MASK);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the mask of a tile smaller than the mask, whose cells are single pixels repeated over several cells.
+     * Each row of cells is the row of its pixel, so a pixel row is computed once and copied to the rows of cells
+     * mapped to it.
+     *
+     * @param image    the padded image.
+     * @param startRow the first row of the tile.
+     * @param startCol the first column of the tile.
+     * @param tileSize the size of the tile, less than MASK_SIDE.
+     * @param masks    the array receiving the mask.
+     * @param offset   the index of the first long of the mask in the array.
+     */
+    private static void computeSmallMask(RappedImage image, int startRow, int startCol, int tileSize, long[] masks,
+                                         int offset) {
+        int pixelRow = NO_PIXEL;
+        long rowBits = 0;
+        for (int row = 0; row < MASK_SIDE; row++) {
+            if (row * tileSize / MASK_SIDE != pixelRow) {
+                pixelRow = row * tileSize / MASK_SIDE;
+                rowBits = 0;
+                boolean bright = false;
+                int pixelCol = NO_PIXEL;
+                for (int col = 0; col < MASK_SIDE; col++) {
+                    if (col * tileSize / MASK_SIDE != pixelCol) {
+                        pixelCol = col * tileSize / MASK_SIDE;
+                        bright = getBrightness(image.getSum(startRow + pixelRow, startCol + pixelCol, 1, 1), 1) >=
+                                BRIGHT_THRESHOLD;
+                    }
+                    if (bright) {
+                        rowBits |= 1L << col;
+                    }
+                }
+            }
+            // A row of cells lies within one long, since MASK_SIDE divides Long.SIZE.
+            int bit = row * MASK_SIDE;
+            masks[offset + (bit >>> WORD_SHIFT)] |= rowBits << (bit & BIT_MASK);
+        }
+    }
+    //endregion
+}
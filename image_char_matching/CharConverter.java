@@ -2,12 +2,19 @@ package image_char_matching;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Set;
 
 /**
  * The class converts characters to a binary "image" (2D array of booleans). The CharConverter class converts
  * characters to a binary "image" represented by a 2D array of booleans. It renders a given character,
  * according to how it looks in the specified font, to a square black & white image with a specified pixel
  * resolution.
+ * <p>
+ * Rendering goes through a {@link Rasterizer}, which keeps one font, image and graphics context and reuses them for
+ * every character it renders, so that large character sets are not paid for with one image per character. Characters
+ * are read from the shared {@link GlyphAtlas}, so each one is rendered at most once per font and resolution.
  */
 public class CharConverter {
     //region CONSTANTS
@@ -25,13 +32,52 @@ public class CharConverter {
     /**
      * The default font name to use for character rendering.
      */
-    private static final String FONT_NAME = "Courier New";
+    public static final String DEFAULT_FONT_NAME = "Courier New";
 
     /**
      * The default pixel resolution for the rendered image.
      */
     public static final int DEFAULT_PIXEL_RESOLUTION = 16;
 
+    /**
+     * The smallest pixel resolution characters can be rendered at.
+     */
+    public static final int MIN_PIXEL_RESOLUTION = 4;
+
+    /**
+     * The largest pixel resolution characters can be rendered at.
+     */
+    public static final int MAX_PIXEL_RESOLUTION = 64;
+
+    /**
+     * The shift converting a pixel index to the index of its long in a bitmap.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * The mask extracting the bit offset inside its long from a pixel index.
+     */
+    private static final int BIT_MASK = Long.SIZE - 1;
+
+    /**
+     * The ARGB value of a pixel the character was not drawn on.
+     */
+    private static final int BLANK_PIXEL = 0;
+
+    /**
+     * The logical fonts, which every Java runtime maps to an installed font, so they can always be used.
+     */
+    private static final Set<String> LOGICAL_FONTS =
+            Set.of(Font.DIALOG, Font.DIALOG_INPUT, Font.MONOSPACED, Font.SERIF, Font.SANS_SERIF);
+
+    //endregion
+
+
+    //region STATIC VARIABLES
+    /**
+     * The names of the font families installed, listed the first time a font is checked.
+     */
+    private static volatile Set<String> availableFonts;
     //endregion
 
 
@@ -45,38 +91,145 @@ public class CharConverter {
      * @return A 2D array of booleans representing the binary image of the character.
      */
     public static boolean[][] convertToBoolArray(char c) {
-        BufferedImage img = getBufferedImage(c);
+        long[] bitmap = GlyphAtlas.get(DEFAULT_FONT_NAME, DEFAULT_PIXEL_RESOLUTION).getBitmap(c);
         boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][DEFAULT_PIXEL_RESOLUTION];
         for (int y = 0; y < DEFAULT_PIXEL_RESOLUTION; y++) {
             for (int x = 0; x < DEFAULT_PIXEL_RESOLUTION; x++) {
-                matrix[y][x] = img.getRGB(x, y) == 0; //is the color black
+                matrix[y][x] = isSet(bitmap, y * DEFAULT_PIXEL_RESOLUTION + x);
             }
         }
         return matrix;
     }
 
-    //endregion
-
-
-    //region PRIVATE METHODS
+    /**
+     * Checks whether a font can be used: a logical font, the default font, or an installed font. Any other font would
+     * silently be rendered in a default font. The default font is accepted even when it is not installed, since the
+     * program starts with it and it is then rendered in the default font as it always was, so that going back to it
+     * is always possible.
+     *
+     * @param fontName the name of the font family.
+     * @return true if the font can be used for rendering.
+     */
+    public static boolean isFontAvailable(String fontName) {
+        if (fontName.equals(DEFAULT_FONT_NAME) || LOGICAL_FONTS.contains(fontName)) {
+            return true;
+        }
+        Set<String> fonts = availableFonts;
+        if (fonts == null) {
+            fonts = Set.of(GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames());
+            availableFonts = fonts;
+        }
+        return fonts.contains(fontName);
+    }
 
     /**
-     * Generates a BufferedImage for rendering the specified character with the given font and pixel
-     * resolution.
+     * Checks whether a pixel of a bitmap made by a {@link Rasterizer} is set.
      *
-     * @param c The character to render.
-     * @return The BufferedImage representing the rendered character.
+     * @param bitmap the bitmap.
+     * @param pixel  the index of the pixel, {@code y * resolution + x}.
+     * @return true if the pixel is set, that is the character was not drawn on it.
      */
-    private static BufferedImage getBufferedImage(char c) {
-        String charStr = Character.toString(c);
-        Font font = new Font(CharConverter.FONT_NAME, Font.PLAIN, CharConverter.DEFAULT_PIXEL_RESOLUTION);
-        BufferedImage img = new BufferedImage(CharConverter.DEFAULT_PIXEL_RESOLUTION, CharConverter.DEFAULT_PIXEL_RESOLUTION, BufferedImage.TYPE_INT_ARGB);
-        Graphics g = img.getGraphics();
-        g.setFont(font);
-        int xOffset = (int) Math.round(CharConverter.DEFAULT_PIXEL_RESOLUTION * X_OFFSET_FACTOR);
-        int yOffset = (int) Math.round(CharConverter.DEFAULT_PIXEL_RESOLUTION * Y_OFFSET_FACTOR);
-        g.drawString(charStr, xOffset, yOffset);
-        return img;
+    static boolean isSet(long[] bitmap, int pixel) {
+        return (bitmap[pixel >>> WORD_SHIFT] & (1L << (pixel & BIT_MASK))) != 0;
+    }
+
+    /**
+     * Renders characters in one font and pixel resolution, reusing a single image and graphics context. A rasterizer
+     * is not thread-safe: each thread renders with its own one, and closes it to release the graphics context.
+     */
+    static final class Rasterizer implements AutoCloseable {
+        /**
+         * The pixel resolution of the rendered characters.
+         */
+        private final int resolution;
+
+        /**
+         * The image the characters are drawn on.
+         */
+        private final BufferedImage image;
+
+        /**
+         * The ARGB pixels of the image, cleared before each character.
+         */
+        private final int[] pixels;
+
+        /**
+         * The graphics context drawing on the image, with the font set.
+         */
+        private final Graphics2D graphics;
+
+        /**
+         * The horizontal position of the characters.
+         */
+        private final int xOffset;
+
+        /**
+         * The vertical position of the baseline of the characters.
+         */
+        private final int yOffset;
+
+        /**
+         * Constructs a rasterizer.
+         *
+         * @param fontName   the name of the font.
+         * @param resolution the pixel resolution of the rendered characters, which is also the font size.
+         */
+        Rasterizer(String fontName, int resolution) {
+            this.resolution = resolution;
+            image = new BufferedImage(resolution, resolution, BufferedImage.TYPE_INT_ARGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            graphics = image.createGraphics();
+            graphics.setFont(new Font(fontName, Font.PLAIN, resolution));
+            xOffset = (int) Math.round(resolution * X_OFFSET_FACTOR);
+            yOffset = (int) Math.round(resolution * Y_OFFSET_FACTOR);
+        }
+
+        /**
+         * Renders a character to a bitmap of resolution x resolution bits, in which pixel {@code y * resolution + x}
+         * is bit {@code (y * resolution + x) % 64} of long {@code (y * resolution + x) / 64}, set when the character
+         * was not drawn on the pixel.
+         *
+         * @param c the character.
+         * @return the bitmap.
+         */
+        long[] render(char c) {
+            Arrays.fill(pixels, BLANK_PIXEL);
+            graphics.drawString(Character.toString(c), xOffset, yOffset);
+            long[] bitmap = new long[(pixels.length + BIT_MASK) >>> WORD_SHIFT];
+            for (int pixel = 0; pixel < pixels.length; pixel++) {
+                if (pixels[pixel] == BLANK_PIXEL) {
+                    bitmap[pixel >>> WORD_SHIFT] |= 1L << (pixel & BIT_MASK);
+                }
+            }
+            return bitmap;
+        }
+
+        /**
+         * Gets the pixel resolution of the rendered characters.
+         *
+         * @return the resolution.
+         */
+        int getResolution() {
+            return resolution;
+        }
+
+        /**
+         * Gets the face name of the font the characters are rendered in, which is a default font when the requested
+         * one is not installed.
+         *
+         * @return the face name.
+         */
+        String getFontFace() {
+            return graphics.getFont().getFontName();
+        }
+
+        /**
+         * Releases the graphics context.
+         */
+        @Override
+        public void close() {
+            graphics.dispose();
+        }
     }
 
     //endregion
@@ -0,0 +1,210 @@
+package image_char_matching;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * The rendered characters of one font and pixel resolution: the bitmap of each character and its brightness, the
+ * fraction of the bitmap that is set. There is one atlas per font name and resolution for the whole program, and each
+ * character is rendered at most once in it (two threads asking for the same new character at the same time may both
+ * render it, which only costs the duplicated work).
+ * <p>
+ * Characters are rendered the first time they are needed, one by one, or all at once through {@link #prepare}, which
+ * splits large sets of characters between the threads of the common ForkJoinPool. Each thread renders its part with
+ * its own {@link CharConverter.Rasterizer}, so thousands of characters cost one font and one image per thread instead
+ * of one per character.
+ */
+class GlyphAtlas {
+    //region CONSTANT VARIABLES
+    /**
+     * The smallest number of characters to render for which the work is split between threads.
+     */
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    /**
+     * The number of parts per thread into which the characters to render are split, to balance the threads.
+     */
+    private static final int PARTS_PER_THREAD = 4;
+    //endregion
+
+
+    //region STATIC VARIABLES
+    /**
+     * The atlas of every font and resolution used so far.
+     */
+    private static final Map<Key, GlyphAtlas> atlases = new ConcurrentHashMap<>();
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The name of the font.
+     */
+    private final String fontName;
+
+    /**
+     * The pixel resolution of the rendered characters.
+     */
+    private final int resolution;
+
+    /**
+     * The rendered characters, indexed by character, null for the characters not rendered yet.
+     */
+    private final AtomicReferenceArray<Glyph> glyphs = new AtomicReferenceArray<>(Character.MAX_VALUE + 1);
+
+    /**
+     * The face name of the font the characters are rendered in, null until the first character is rendered.
+     */
+    private volatile String renderedFace;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Gets the atlas of a font and pixel resolution, creating it the first time.
+     *
+     * @param fontName   the name of the font.
+     * @param resolution the pixel resolution of the rendered characters.
+     * @return the atlas.
+     */
+    static GlyphAtlas get(String fontName, int resolution) {
+        return atlases.computeIfAbsent(new Key(fontName, resolution),
+                key -> new GlyphAtlas(key.fontName(), key.resolution()));
+    }
+
+    /**
+     * Gets the brightness of a character, rendering it the first time.
+     *
+     * @param c the character.
+     * @return the fraction of the pixels of the character's bitmap that are set.
+     */
+    float getBrightness(char c) {
+        return getGlyph(c).brightness();
+    }
+
+    /**
+     * Gets the bitmap of a character, rendering it the first time. The layout is the one of
+     * {@link CharConverter.Rasterizer#render}.
+     *
+     * @param c the character.
+     * @return the bitmap, which must not be modified.
+     */
+    long[] getBitmap(char c) {
+        return getGlyph(c).bitmap();
+    }
+
+    /**
+     * Gets the face name of the font the characters are rendered in, which is a default font when the requested one
+     * is not installed.
+     *
+     * @return the face name, or null if no character was rendered yet.
+     */
+    String getRenderedFace() {
+        return renderedFace;
+    }
+
+    /**
+     * Renders the characters that were not rendered yet among the given ones, in parallel when there are many.
+     *
+     * @param chars the characters, possibly with duplicates.
+     */
+    void prepare(char[] chars) {
+        char[] missing = new char[chars.length];
+        int count = 0;
+        for (char c : chars) {
+            if (glyphs.get(c) == null) {
+                missing[count++] = c;
+            }
+        }
+        if (count < PARALLEL_THRESHOLD) {
+            render(missing, 0, count);
+            return;
+        }
+        int parts = Math.min(count, ForkJoinPool.getCommonPoolParallelism() * PARTS_PER_THREAD);
+        int total = count;
+        IntStream.range(0, parts).parallel()
+                .forEach(part -> render(missing, (int) ((long) total * part / parts),
+                        (int) ((long) total * (part + 1) / parts)));
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Constructs an empty atlas.
+     *
+     * @param fontName   the name of the font.
+     * @param resolution the pixel resolution of the rendered characters.
+     */
+    private GlyphAtlas(String fontName, int resolution) {
+        this.fontName = fontName;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Gets the rendered character, rendering it the first time.
+     *
+     * @param c the character.
+     * @return the rendered character.
+     */
+    private Glyph getGlyph(char c) {
+        Glyph glyph = glyphs.get(c);
+        if (glyph == null) {
+            render(new char[]{c}, 0, 1);
+            glyph = glyphs.get(c);
+        }
+        return glyph;
+    }
+
+    /**
+     * Renders some characters with one rasterizer, and stores them. The first rendering records the font actually
+     * rendered, and checks the saved brightness table of the same font and resolution against it.
+     *
+     * @param chars the array holding the characters.
+     * @param from  the index of the first character to render.
+     * @param to    the index after the last character to render.
+     */
+    private void render(char[] chars, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        try (CharConverter.Rasterizer rasterizer = new CharConverter.Rasterizer(fontName, resolution)) {
+            if (renderedFace == null) {
+                renderedFace = rasterizer.getFontFace();
+                GlyphBrightnessTable.checkRenderedFace(fontName, resolution, renderedFace);
+            }
+            for (int i = from; i < to; i++) {
+                long[] bitmap = rasterizer.render(chars[i]);
+                int set = 0;
+                for (long word : bitmap) {
+                    set += Long.bitCount(word);
+                }
+                glyphs.set(chars[i], new Glyph(bitmap, (float) set / (resolution * resolution)));
+            }
+        }
+    }
+
+    /**
+     * The font name and resolution identifying the rendering of the characters, and so an atlas.
+     *
+     * @param fontName   the name of the font.
+     * @param resolution the pixel resolution of the rendered characters.
+     */
+    record Key(String fontName, int resolution) {
+    }
+
+    /**
+     * A rendered character.
+     *
+     * @param bitmap     the bitmap of the character.
+     * @param brightness the fraction of the pixels of the bitmap that are set.
+     */
+    private record Glyph(long[] bitmap, float brightness) {
+    }
+    //endregion
+}
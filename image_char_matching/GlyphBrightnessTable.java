@@ -0,0 +1,305 @@
+package image_char_matching;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of the brightness of the printable ASCII characters for one font and pixel resolution, so that characters
+ * are not rendered through AWT every time the program starts. The table is generated the first time it is needed and
+ * saved as a small binary file; later runs read the file instead. Characters outside the table are rendered as before.
+ * <p>
+ * The files are kept in the directory set by the system property {@value #DIRECTORY_PROPERTY}, by default a
+ * directory of the temporary directory. A file is named after the requested font name, the resolution, the Java
+ * runtime, whose rasterizer may change between versions, and the version of the file format, none of which needs the
+ * font subsystem, so that loading a saved table does not touch AWT. The font the name resolved to, which is a default
+ * one when the requested font is not installed, is only recorded in the file; it is checked by the {@link GlyphAtlas}
+ * the first time it renders in that font and resolution, and a table made for another font is then discarded. A file
+ * that is missing, unreadable or made for anything else is regenerated, and a table that cannot be saved is still
+ * used from memory. A file is written to a temporary file and then atomically renamed, so several processes may
+ * generate it at the same time. Within the program, each table is loaded once and shared.
+ */
+class GlyphBrightnessTable {
+    //region CONSTANT VARIABLES
+    /**
+     * The name of the system property setting the directory of the table files.
+     */
+    static final String DIRECTORY_PROPERTY = "image_char_matching.glyphTableDir";
+
+    /**
+     * The name of the default directory of the table files, in the temporary directory.
+     */
+    private static final String DEFAULT_DIRECTORY = "ascii-art-glyphs";
+
+    /**
+     * The name of the system property holding the temporary directory.
+     */
+    private static final String TEMP_DIRECTORY_PROPERTY = "java.io.tmpdir";
+
+    /**
+     * The first character of the table.
+     */
+    private static final char FIRST_CHAR = ' ';
+
+    /**
+     * The last character of the table.
+     */
+    private static final char LAST_CHAR = '~';
+
+    /**
+     * The number of characters of the table.
+     */
+    private static final int CHAR_COUNT = LAST_CHAR - FIRST_CHAR + 1;
+
+    /**
+     * The value identifying a table file.
+     */
+    private static final int MAGIC = 0x474C5954;
+
+    /**
+     * The version of the file format, part of the header and of the file name. Version 3 keys the files by the
+     * requested font name and the Java runtime, and records the rendered font in the header.
+     */
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * The version of the Java runtime, whose font rasterizer renders the characters.
+     */
+    private static final String RUNTIME_VERSION = Runtime.version().toString();
+
+    /**
+     * The format of a table file name, from the format version, the font name, the pixel resolution and the runtime
+     * version.
+     */
+    private static final String NAME_FORMAT = "glyphs-v%d-%s-%d-java%s.bin";
+
+    /**
+     * The characters of a font name that are kept in a file name; the others are replaced.
+     */
+    private static final String UNSAFE_NAME_CHARS = "[^A-Za-z0-9]";
+
+    /**
+     * The replacement of the characters of a font name that are not kept in a file name.
+     */
+    private static final String NAME_CHAR_REPLACEMENT = "_";
+
+    /**
+     * The suffix of the temporary files being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    //endregion
+
+
+    //region STATIC VARIABLES
+    /**
+     * The tables loaded so far, by font name and resolution.
+     */
+    private static final Map<GlyphAtlas.Key, GlyphBrightnessTable> tables = new ConcurrentHashMap<>();
+    //endregion
+
+
+    //region PRIVATE VARIABLES
+    /**
+     * The brightness of each character of the table, indexed from FIRST_CHAR.
+     */
+    private final float[] brightnesses;
+
+    /**
+     * The face name of the font the characters were rendered in.
+     */
+    private final String renderedFace;
+
+    /**
+     * The file the table is saved in.
+     */
+    private final Path file;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Gets the table of the given font and pixel resolution, loading it the first time.
+     *
+     * @param fontName   the name of the font.
+     * @param resolution the pixel resolution of the rendered characters.
+     * @return the table.
+     */
+    static GlyphBrightnessTable get(String fontName, int resolution) {
+        return tables.computeIfAbsent(new GlyphAtlas.Key(fontName, resolution),
+                key -> load(key.fontName(), key.resolution()));
+    }
+
+    /**
+     * Checks whether the table holds the brightness of a character.
+     *
+     * @param c the character.
+     * @return true if the character is in the table.
+     */
+    boolean contains(char c) {
+        return c >= FIRST_CHAR && c <= LAST_CHAR;
+    }
+
+    /**
+     * Gets the brightness of a character of the table.
+     *
+     * @param c the character, which must be in the table.
+     * @return the brightness of the character.
+     */
+    float getBrightness(char c) {
+        return brightnesses[c - FIRST_CHAR];
+    }
+
+    /**
+     * Checks the table of a font and pixel resolution, if loaded, against the font the characters are actually
+     * rendered in. A table made for another font, because fonts were installed or removed since its file was saved,
+     * is discarded along with its file, so that the next matcher of that font and resolution regenerates it.
+     *
+     * @param fontName     the name of the font.
+     * @param resolution   the pixel resolution of the rendered characters.
+     * @param renderedFace the face name of the font the characters are rendered in.
+     */
+    static void checkRenderedFace(String fontName, int resolution, String renderedFace) {
+        GlyphAtlas.Key key = new GlyphAtlas.Key(fontName, resolution);
+        GlyphBrightnessTable table = tables.get(key);
+        if (table == null || table.renderedFace.equals(renderedFace)) {
+            return;
+        }
+        tables.remove(key, table);
+        try {
+            Files.deleteIfExists(table.file);
+        } catch (IOException e) {
+            // The file is regenerated by the next run that checks it.
+        }
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Loads the table of the given font and pixel resolution from its file, or generates it and saves it if the file
+     * is missing or does not match. Only the generation renders characters.
+     *
+     * @param fontName   the name of the font.
+     * @param resolution the pixel resolution of the rendered characters.
+     * @return the table.
+     */
+    private static GlyphBrightnessTable load(String fontName, int resolution) {
+        Path file = Path.of(System.getProperty(DIRECTORY_PROPERTY,
+                        Path.of(System.getProperty(TEMP_DIRECTORY_PROPERTY), DEFAULT_DIRECTORY).toString()))
+                .resolve(String.format(NAME_FORMAT, FORMAT_VERSION, safeName(fontName), resolution,
+                        safeName(RUNTIME_VERSION)));
+        GlyphBrightnessTable table = read(file, fontName, resolution);
+        if (table == null) {
+            char[] chars = new char[CHAR_COUNT];
+            for (int i = 0; i < CHAR_COUNT; i++) {
+                chars[i] = (char) (FIRST_CHAR + i);
+            }
+            GlyphAtlas atlas = GlyphAtlas.get(fontName, resolution);
+            atlas.prepare(chars);
+            float[] brightnesses = new float[CHAR_COUNT];
+            for (int i = 0; i < CHAR_COUNT; i++) {
+                brightnesses[i] = atlas.getBrightness(chars[i]);
+            }
+            table = new GlyphBrightnessTable(brightnesses, atlas.getRenderedFace(), file);
+            table.write(fontName, resolution);
+        }
+        return table;
+    }
+
+    /**
+     * Constructs a table holding the given brightness values.
+     *
+     * @param brightnesses the brightness of each character, indexed from FIRST_CHAR.
+     * @param renderedFace the face name of the font the characters were rendered in.
+     * @param file         the file the table is saved in.
+     */
+    private GlyphBrightnessTable(float[] brightnesses, String renderedFace, Path file) {
+        this.brightnesses = brightnesses;
+        this.renderedFace = renderedFace;
+        this.file = file;
+    }
+
+    /**
+     * Makes a name part safe to use in a file name.
+     *
+     * @param name the name part.
+     * @return the name part with the unsafe characters replaced.
+     */
+    private static String safeName(String name) {
+        return name.replaceAll(UNSAFE_NAME_CHARS, NAME_CHAR_REPLACEMENT);
+    }
+
+    /**
+     * Reads a table file. Since unsafe characters are replaced in the file name, the header holds the exact font name
+     * and runtime version, which must match too.
+     *
+     * @param file       the file.
+     * @param fontName   the expected font name.
+     * @param resolution the expected pixel resolution.
+     * @return the table, or null if the file is missing, unreadable or does not match.
+     */
+    private static GlyphBrightnessTable read(Path file, String fontName, int resolution) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION ||
+                    !input.readUTF().equals(fontName) || !input.readUTF().equals(RUNTIME_VERSION) ||
+                    input.readInt() != resolution || input.readChar() != FIRST_CHAR ||
+                    input.readInt() != CHAR_COUNT) {
+                return null;
+            }
+            String renderedFace = input.readUTF();
+            float[] brightnesses = new float[CHAR_COUNT];
+            for (int i = 0; i < CHAR_COUNT; i++) {
+                brightnesses[i] = input.readFloat();
+            }
+            return new GlyphBrightnessTable(brightnesses, renderedFace, file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the table to its file, through a temporary file renamed atomically. Errors are ignored, leaving the
+     * table to be generated again by the next run.
+     *
+     * @param fontName   the font name.
+     * @param resolution the pixel resolution.
+     */
+    private void write(String fontName, int resolution) {
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_SUFFIX);
+            try (DataOutputStream output =
+                         new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(fontName);
+                output.writeUTF(RUNTIME_VERSION);
+                output.writeInt(resolution);
+                output.writeChar(FIRST_CHAR);
+                output.writeInt(CHAR_COUNT);
+                output.writeUTF(renderedFace);
+                for (float brightness : brightnesses) {
+                    output.writeFloat(brightness);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+        } catch (IOException e) {
+            // The table is used from memory only.
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // Nothing more can be done.
+                }
+            }
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,53 @@
+package image_char_matching;
+
+/**
+ * The shapes of the rendered characters as 256 bit masks, for matching the shape of image tiles. The bit of a pixel of
+ * the 16 x 16 rendering of a character is set when the pixel is bright, that is not covered by the character, and
+ * bit {@code row * 16 + col} of a mask is bit {@code (row * 16 + col) % 64} of long {@code (row * 16 + col) / 64},
+ * the layout of the tile masks of the image package. The masks of a font are the bitmaps of its {@link GlyphAtlas} at
+ * resolution 16, whatever the resolution its brightness is measured at, since tiles are always sampled on that grid.
+ */
+class GlyphMasks {
+    //region CONSTANT VARIABLES
+    /**
+     * The number of pixels along each side of a mask.
+     */
+    static final int MASK_SIDE = 16;
+
+    /**
+     * The number of longs holding a mask.
+     */
+    static final int MASK_WORDS = MASK_SIDE * MASK_SIDE / Long.SIZE;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Gets the atlas holding the masks of the characters of a font. Its bitmaps are the masks, which must not be
+     * modified.
+     *
+     * @param fontName the name of the font.
+     * @return the atlas of the font at the resolution of the masks.
+     */
+    static GlyphAtlas atlasOf(String fontName) {
+        return GlyphAtlas.get(fontName, MASK_SIDE);
+    }
+
+    /**
+     * Counts the pixels in which a character and a tile differ.
+     *
+     * @param glyph  the mask of the character.
+     * @param tiles  the array holding the mask of the tile.
+     * @param offset the index of the first long of the tile mask in the array.
+     * @return the Hamming distance between the masks.
+     */
+    static int distance(long[] glyph, long[] tiles, int offset) {
+        int distance = 0;
+        for (int word = 0; word < MASK_WORDS; word++) {
+            distance += Long.bitCount(glyph[word] ^ tiles[offset + word]);
+        }
+        return distance;
+    }
+    //endregion
+}
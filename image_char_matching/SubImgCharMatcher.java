@@ -1,10 +1,25 @@
 package image_char_matching;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The SubImgCharMatcher class provides methods to match characters to image brightness values using a custom character
  * set.
+ * <p>
+ * The character set is kept as an immutable {@link Snapshot}: two parallel primitive arrays, the raw brightness of each
+ * character and the character itself, sorted by brightness and then by ASCII value. The brightness is normalized to
+ * the range of the set only when matching. Every change builds a new snapshot and publishes it atomically, so a
+ * matcher can be shared between threads: a render pins one snapshot and reads it without locking, unaffected by
+ * changes made meanwhile.
+ * <p>
+ * The brightness of the characters is measured by rendering them in a font at a pixel resolution, both set when the
+ * matcher is built. Rendered characters are shared by all the matchers of the program through a cache keyed by font,
+ * resolution and character, so matchers of different fonts coexist without rendering a character twice or mixing
+ * their values.
+ * <p>
+ * Besides brightness, a snapshot can match the shape of a tile given as a 16 x 16 bit mask: among the characters whose
+ * brightness is close to the tile's, it picks the one whose rendering differs from the tile in the fewest pixels.
  */
 public class SubImgCharMatcher {
     //region CONSTANT VARIABLES
@@ -17,35 +32,56 @@ public class SubImgCharMatcher {
      */
     private static final int FIRST_INDEX = 0;
     /**
-     * init a counter value to 0
+     * The number of equal-width buckets of normalized brightness in the lookup table. A power of 2, so that the bucket
+     * of a brightness and the bounds of a bucket are computed exactly in float arithmetic.
      */
-    private static final int INITIAL_COUNTER = 0;
+    private static final int LOOKUP_BUCKETS = 4096;
     /**
-     * init a counter value to 1
+     * The lookup table entry of a bucket whose brightness values do not all match the same character.
      */
-    private static final int NEXT_COUNTER = 1;
-    //endregion
-    //region STATIC VARIABLES
+    private static final int NO_SINGLE_CHAR = -1;
+    /**
+     * The index returned by the searches when no character is found.
+     */
+    private static final int NOT_FOUND = -1;
+    /**
+     * The normalized brightness of every character when all of them have the same brightness.
+     */
+    private static final float DEGENERATE_NORMAL_BRIGHTNESS = 0;
     /**
-     * The character brightness history map.
+     * The bit offset of the brightness in a sort key made of a brightness and a character.
      */
-    private static final HashMap<Character, Float> charBrightnessHistoryMap = new HashMap<>();
+    private static final int BRIGHTNESS_SHIFT = Character.SIZE;
+    /**
+     * The largest difference of normalized brightness between a tile and the characters compared with its shape.
+     */
+    private static final float SHAPE_BAND = 0.125f;
     //endregion
     //region PRIVATE VARIABLES
     /**
-     * The mapping of normalized brightness values to characters.
+     * The name of the font the characters are rendered in.
+     */
+    private final String fontName;
+
+    /**
+     * The pixel resolution the characters are rendered at.
      */
-    private final TreeMap<Float, List<Character>> floatToCharsMap;
+    private final int glyphResolution;
 
     /**
-     * The minimum character brightness value.
+     * The rendered characters in the font and resolution of the matcher, for the characters outside the saved table.
      */
-    private float minCharBrightness = Float.MAX_VALUE;
+    private final GlyphAtlas glyphAtlas;
 
     /**
-     * The maximum character brightness value.
+     * The saved brightness of the printable ASCII characters in the font and resolution of the matcher.
      */
-    private float maxCharBrightness = Float.MIN_VALUE;
+    private final GlyphBrightnessTable glyphTable;
+
+    /**
+     * The current version of the character set.
+     */
+    private final AtomicReference<Snapshot> snapshot;
 
     //endregion
 
@@ -53,309 +89,590 @@ public class SubImgCharMatcher {
     //region API
 
     /**
-     * Constructs a SubImgCharMatcher object with the specified character set.
+     * Constructs a SubImgCharMatcher object with the specified character set, rendered in the default font and
+     * resolution of CharConverter.
      *
      * @param charset an array of characters forming the character set for the algorithm.
      */
     public SubImgCharMatcher(char[] charset) {
-        this.floatToCharsMap = new TreeMap<>();
-        for (char c : charset) {
-            charBrightnessHistoryMap.put(c, getCharBrightness(c));
-            updateMin(c);
-            updateMax(c);
-        }
-        initNormalMap();
+        this(charset, CharConverter.DEFAULT_FONT_NAME, CharConverter.DEFAULT_PIXEL_RESOLUTION);
     }
 
     /**
-     * Retrieves the character associated with the specified image brightness value.
+     * Constructs a SubImgCharMatcher object with the specified character set, rendered in the given font and
+     * resolution.
      *
-     * @param brightness the brightness value of the image.
-     * @return the character corresponding to the given brightness value.
-     * @throws RuntimeException if the character set is empty.
+     * @param charset         an array of characters forming the character set for the algorithm.
+     * @param fontName        the name of the font the characters are rendered in.
+     * @param glyphResolution the pixel resolution the characters are rendered at.
+     * @throws IllegalArgumentException if the resolution is outside the range supported by CharConverter.
      */
-    public char getCharByImageBrightness(double brightness) throws RuntimeException {
-        if (floatToCharsMap.isEmpty()) {
-            throw new RuntimeException("Character set is empty");
-        }
-        if (floatToCharsMap.containsKey((float) brightness)) {
-            return asciiMinValue(floatToCharsMap.get((float) brightness));
+    public SubImgCharMatcher(char[] charset, String fontName, int glyphResolution) throws IllegalArgumentException {
+        if (glyphResolution < CharConverter.MIN_PIXEL_RESOLUTION ||
+                glyphResolution > CharConverter.MAX_PIXEL_RESOLUTION) {
+            throw new IllegalArgumentException("Unsupported glyph resolution: " + glyphResolution);
         }
-        Map.Entry<Float, List<Character>> closestBrightnessDown =
-                floatToCharsMap.lowerEntry((float) brightness);
-        Map.Entry<Float, List<Character>> closestBrightnessUp =
-                floatToCharsMap.higherEntry((float) brightness);
-
-        Character closestBrightnessUp1 = getClosestCharacter((float) brightness, closestBrightnessUp,
-                closestBrightnessDown);
-        if (closestBrightnessUp1 != null)
-            return closestBrightnessUp1;
-        return SPACE_CHAR;
+        this.fontName = fontName;
+        this.glyphResolution = glyphResolution;
+        glyphAtlas = GlyphAtlas.get(fontName, glyphResolution);
+        glyphTable = GlyphBrightnessTable.get(fontName, glyphResolution);
+        snapshot = new AtomicReference<>(new Snapshot(GlyphMasks.atlasOf(fontName), new float[0], new char[0]));
+        addChars(charset);
     }
 
-
     /**
-     * Adds a character to the character set.
+     * Builds a matcher holding the current characters of this one, rendered in another font or resolution.
      *
-     * @param c The character to add.
+     * @param fontName        the name of the font the characters are rendered in.
+     * @param glyphResolution the pixel resolution the characters are rendered at.
+     * @return the new matcher.
+     * @throws IllegalArgumentException if the resolution is outside the range supported by CharConverter.
      */
-    public void addChar(char c) {
-        float cNormalBrightness = normalBrightness(c);
-        if (floatToCharsMap.isEmpty()) {
-            minCharBrightness = getCharBrightness(c);
-            maxCharBrightness = getCharBrightness(c);
-
-        }
-        if (floatToCharsMap.containsKey(cNormalBrightness) &&
-                floatToCharsMap.get(cNormalBrightness).contains(c)) {
-            return;
-        }
-        if (!charBrightnessHistoryMap.containsKey(c)) {
-            charBrightnessHistoryMap.put(c, getCharBrightness(c));
-        }
-        updateMinMaxAfterAdding(c, cNormalBrightness);
+    public SubImgCharMatcher withGlyphStyle(String fontName, int glyphResolution) throws IllegalArgumentException {
+        return new SubImgCharMatcher(snapshot.get().chars, fontName, glyphResolution);
     }
 
-
     /**
-     * Retrieves a sorted list of all characters in the character set.
+     * Gets the name of the font the characters are rendered in.
      *
-     * @return a sorted list of characters.
+     * @return the font name.
      */
-    public List<Character> GetAllCharsSorted() {
-        Collection<List<Character>> charSet = floatToCharsMap.values();
-        List<Character> flattenedList = new ArrayList<>();
-        for (List<Character> sublist : charSet) {
-            flattenedList.addAll(sublist);
-        }
-        List<Character> sortedList = new ArrayList<>(flattenedList);
-        Collections.sort(sortedList);
-        return sortedList;
+    public String getFontName() {
+        return fontName;
     }
 
     /**
-     * Removes a character from the character set used by the algorithm.
+     * Gets the pixel resolution the characters are rendered at.
      *
-     * @param c The character to be removed from the character map.
+     * @return the glyph resolution.
      */
-    public void removeChar(char c) {
-        float cNormalBrightness = normalBrightness(c);
-        if ((!floatToCharsMap.containsKey(cNormalBrightness)) ||
-                !floatToCharsMap.get(cNormalBrightness).contains(c)) {
-            return;
-        }
-        updateMinMaxAfterRemoving(c);
+    public int getGlyphResolution() {
+        return glyphResolution;
     }
 
-
-    //endregion
-
-    //region PRIVATE METHODS
-
     /**
-     * Retrieves the closest character brightness value to the specified brightness value.
+     * Retrieves the character associated with the specified image brightness value, in the current version of the
+     * character set.
      *
      * @param brightness the brightness value of the image.
      * @return the character corresponding to the given brightness value.
      * @throws RuntimeException if the character set is empty.
      */
-    private Character getClosestCharacter(float brightness,
-                                          Map.Entry<Float, List<Character>> closestBrightnessUp,
-                                          Map.Entry<Float, List<Character>> closestBrightnessDown) {
-        float disFromUp = (closestBrightnessUp != null) ?
-                Math.abs(closestBrightnessUp.getKey() - brightness) : Float.MAX_VALUE;
-        float disFromDown = (closestBrightnessDown != null) ?
-                Math.abs(closestBrightnessDown.getKey() - brightness) : Float.MAX_VALUE;
-
-        if (closestBrightnessUp != null && disFromUp < disFromDown) {
-            return asciiMinValue(closestBrightnessUp.getValue());
-        } else if (closestBrightnessDown != null) {
-            return asciiMinValue(closestBrightnessDown.getValue());
-        }
-        return null;
+    public char getCharByImageBrightness(double brightness) throws RuntimeException {
+        return snapshot.get().getCharByImageBrightness(brightness);
     }
 
     /**
-     * updates the character brightness history map after a character removal.
+     * Gets the current version of the character set. Matching many brightness values against one snapshot gives
+     * consistent results even if the character set is changed meanwhile.
      *
-     * @param c the character being removed.
+     * @return the current snapshot of the character set.
      */
-    private void updateMinMaxAfterRemoving(char c) {
-        List<Character> cBrightnessList = floatToCharsMap.get(normalBrightness(c));
-        cBrightnessList.removeIf(element -> Objects.equals(element, c));
-        if (cBrightnessList.isEmpty()) {
-            floatToCharsMap.remove(normalBrightness(c), cBrightnessList);
-        }
-        if (checkMinUpdate(c) || checkMaxUpdate(c)) {
-            updateNormalMap();
-        }
+    public Snapshot getSnapshot() {
+        return snapshot.get();
     }
 
     /**
-     * Updates the minimum and maximum character brightness values after a character addition. in addition to updating
-     * the mapping of normalized brightness values to characters.
+     * Adds a character to the character set.
      *
-     * @param c                 The character being added.
-     * @param cNormalBrightness The normalized brightness value of the character.
-     */
-    private void updateMinMaxAfterAdding(char c, float cNormalBrightness) {
-        List<Character> cBrightnessList = floatToCharsMap.get(cNormalBrightness);
-        if (cBrightnessList == null) {
-            floatToCharsMap.put(cNormalBrightness, new ArrayList<>());
-            cBrightnessList = floatToCharsMap.get(cNormalBrightness);
-        }
-        cBrightnessList.add(c);
-        if (updateMin(c) || updateMax(c)) {
-            updateNormalMap();
-        }
+     * @param c The character to add.
+     */
+    public void addChar(char c) {
+        addChars(new char[]{c});
     }
 
     /**
-     * Retrieves the character with the minimum ASCII value from a list of characters.
+     * Adds several characters to the character set at once, with a single pass over the set whatever the number of
+     * characters.
      *
-     * @param characters the list of characters.
-     * @return the character with the minimum ASCII value.
-     */
-    private char asciiMinValue(List<Character> characters) {
-        char minAsciiChar = characters.get(FIRST_INDEX);
-        for (char c : characters) {
-            if (c < minAsciiChar) {
-                minAsciiChar = c;
-            }
-        }
-        return minAsciiChar;
+     * @param charsToAdd The characters to add.
+     */
+    public void addChars(char[] charsToAdd) {
+        long[] keys = sortedKeys(charsToAdd);
+        snapshot.updateAndGet(current -> current.withAdded(keys));
     }
 
     /**
-     * Checks whether the maximum character brightness needs to be updated after a character removal.
+     * Adds all the characters of a range to the character set at once.
      *
-     * @param c The character being removed.
-     * @return true if the maximum brightness needs to be updated, otherwise false.
+     * @param first the first character of the range.
+     * @param last  the last character of the range, inclusive.
      */
-    private boolean checkMaxUpdate(char c) {
-        if (floatToCharsMap.isEmpty()) {
-            maxCharBrightness = Float.MIN_VALUE;
-            return true;
-        }
-        if (charBrightnessHistoryMap.get(c) == maxCharBrightness) {
-            maxCharBrightness = floatToCharsMap.lastKey();
-            return true;
-        }
-        return false;
+    public void addCharsInRange(char first, char last) {
+        addChars(charsInRange(first, last));
     }
 
     /**
-     * Checks whether the minimum character brightness needs to be updated after a character removal.
+     * Removes a character from the character set used by the algorithm.
      *
-     * @param c The character being removed.
-     * @return true if the minimum brightness needs to be updated, otherwise false.
+     * @param c The character to be removed from the character map.
      */
-    private boolean checkMinUpdate(char c) {
-        if (floatToCharsMap.isEmpty()) {
-            minCharBrightness = Float.MAX_VALUE;
-            return true;
-        }
-        if (charBrightnessHistoryMap.get(c) == minCharBrightness) {
-            maxCharBrightness = floatToCharsMap.firstKey();
-            return true;
-        }
-        return false;
+    public void removeChar(char c) {
+        removeChars(new char[]{c});
     }
 
     /**
-     * Updates the minimum character brightness value if necessary after a character addition.
+     * Removes several characters from the character set at once, with a single pass over the set whatever the number
+     * of characters.
      *
-     * @param c The character being added.
-     * @return true if the minimum brightness is updated, otherwise false.
+     * @param charsToRemove The characters to remove.
      */
-    private boolean updateMin(char c) {
-        if (charBrightnessHistoryMap.get(c) < minCharBrightness) {
-            minCharBrightness = charBrightnessHistoryMap.get(c);
-            return true;
-        }
-        return false;
+    public void removeChars(char[] charsToRemove) {
+        long[] keys = sortedKeys(charsToRemove);
+        snapshot.updateAndGet(current -> current.withRemoved(keys));
     }
 
     /**
-     * Updates the maximum character brightness value if necessary after a character addition.
+     * Removes all the characters of a range from the character set at once.
      *
-     * @param c The character being added.
-     * @return true if the maximum brightness is updated, otherwise false.
+     * @param first the first character of the range.
+     * @param last  the last character of the range, inclusive.
      */
-    private boolean updateMax(char c) {
-        if (charBrightnessHistoryMap.get(c) > maxCharBrightness) {
-            maxCharBrightness = charBrightnessHistoryMap.get(c);
-            return true;
-        }
-        return false;
+    public void removeCharsInRange(char first, char last) {
+        removeChars(charsInRange(first, last));
     }
 
     /**
-     * Retrieves the brightness value of a character.
+     * Retrieves a sorted list of all characters in the character set.
      *
-     * @param c The character.
-     * @return the brightness value.
+     * @return a sorted list of characters.
      */
-    private float getCharBrightness(char c) {
-        //TODO make this static
-        if (charBrightnessHistoryMap.containsKey(c)) {
-            return charBrightnessHistoryMap.get(c);
+    public List<Character> GetAllCharsSorted() {
+        char[] sortedChars = snapshot.get().chars.clone();
+        Arrays.sort(sortedChars);
+        List<Character> sortedList = new ArrayList<>(sortedChars.length);
+        for (char c : sortedChars) {
+            sortedList.add(c);
+        }
+        return sortedList;
+    }
+
+    /**
+     * An immutable version of a character set, which matches brightness values to its characters. Snapshots are safe
+     * to share between threads.
+     */
+    public static final class Snapshot {
+        /**
+         * The atlas holding the masks of the characters, in the font of the set.
+         */
+        private final GlyphAtlas maskAtlas;
+
+        /**
+         * The raw brightness of the characters of the set, in ascending order.
+         */
+        private final float[] brightnesses;
+
+        /**
+         * The characters of the set, in the order of their brightness and then of their ASCII value.
+         */
+        private final char[] chars;
+
+        /**
+         * The character matched by every brightness value of each bucket, or NO_SINGLE_CHAR when the values of a
+         * bucket match different characters. The last entry holds the brightness 1 alone. Null until the first match;
+         * two threads may build it at the same time, which only costs the duplicated work.
+         */
+        private volatile int[] lookupTable;
+
+        /**
+         * The masks of the characters, in the order of the set. Null until the first shape match; two threads may
+         * gather them at the same time, which only costs the duplicated work.
+         */
+        private volatile long[][] glyphMasks;
+
+        /**
+         * Constructs a snapshot over sorted arrays, which it takes ownership of.
+         *
+         * @param maskAtlas    the atlas holding the masks of the characters.
+         * @param brightnesses the raw brightness of the characters, in ascending order.
+         * @param chars        the characters, in the same order.
+         */
+        private Snapshot(GlyphAtlas maskAtlas, float[] brightnesses, char[] chars) {
+            this.maskAtlas = maskAtlas;
+            this.brightnesses = brightnesses;
+            this.chars = chars;
         }
-        boolean[][] greyArray = CharConverter.convertToBoolArray(c);
-        int count = INITIAL_COUNTER;
-        for (boolean[] booleans : greyArray) {
-            for (boolean b : booleans) {
-                if (b) {
-                    count += NEXT_COUNTER;
+
+        /**
+         * Retrieves the character associated with the specified image brightness value. A brightness between 0 and 1
+         * is looked up in a table of buckets built once per snapshot; the few buckets straddling the point where the
+         * matched character changes, and any brightness out of range, fall back to the search of the character set,
+         * so the result is always the one of the search.
+         *
+         * @param brightness the brightness value of the image.
+         * @return the character corresponding to the given brightness value.
+         * @throws RuntimeException if the character set is empty.
+         */
+        public char getCharByImageBrightness(double brightness) throws RuntimeException {
+            if (chars.length == 0) {
+                throw new RuntimeException("Character set is empty");
+            }
+            float floatBrightness = (float) brightness;
+            if (floatBrightness >= 0 && floatBrightness <= 1) {
+                int[] table = lookupTable;
+                if (table == null) {
+                    table = buildLookupTable();
+                    lookupTable = table;
+                }
+                int matched = table[(int) (floatBrightness * LOOKUP_BUCKETS)];
+                if (matched != NO_SINGLE_CHAR) {
+                    return (char) matched;
+                }
+            }
+            return searchCharByBrightness(floatBrightness);
+        }
+
+        /**
+         * Retrieves the character whose shape best matches a tile. The candidates are the characters whose normalized
+         * brightness is within SHAPE_BAND of the brightness of the tile; among them, the character whose mask differs
+         * from the tile mask in the fewest bits wins, then the one of the closest brightness, then the one with the
+         * lowest ASCII value. When no character is close enough in brightness, the tile is matched by brightness only.
+         *
+         * @param brightness the brightness value of the tile.
+         * @param tileMasks  the array holding the mask of the tile, in the layout of the tile masks of the image
+         *                   package.
+         * @param offset     the index of the first long of the tile mask in the array.
+         * @return the character matching the tile.
+         * @throws RuntimeException if the character set is empty.
+         */
+        public char getCharByShape(double brightness, long[] tileMasks, int offset) throws RuntimeException {
+            float floatBrightness = (float) brightness;
+            int from = firstNotBelow(floatBrightness - SHAPE_BAND);
+            int to = firstNotBelow(Math.nextUp(floatBrightness + SHAPE_BAND));
+            if (from >= to) {
+                return getCharByImageBrightness(brightness);
+            }
+            long[][] masks = getGlyphMasks();
+            int best = from;
+            int bestDistance = Integer.MAX_VALUE;
+            float bestGap = Float.MAX_VALUE;
+            for (int i = from; i < to; i++) {
+                int distance = GlyphMasks.distance(masks[i], tileMasks, offset);
+                float gap = Math.abs(normalBrightness(i) - floatBrightness);
+                if (distance < bestDistance || (distance == bestDistance &&
+                        (gap < bestGap || (gap == bestGap && chars[i] < chars[best])))) {
+                    best = i;
+                    bestDistance = distance;
+                    bestGap = gap;
+                }
+            }
+            return chars[best];
+        }
+
+        /**
+         * Checks whether the character set is empty.
+         *
+         * @return true if the set has no characters.
+         */
+        public boolean isEmpty() {
+            return chars.length == 0;
+        }
+
+        /**
+         * Builds the snapshot with the given characters added. Characters already in the set are skipped.
+         *
+         * @param keys the sort keys of the characters to add, in ascending order and without duplicates.
+         * @return the new snapshot, or this one if no character is added.
+         */
+        private Snapshot withAdded(long[] keys) {
+            float[] newBrightnesses = new float[chars.length + keys.length];
+            char[] newChars = new char[newBrightnesses.length];
+            int existing = FIRST_INDEX;
+            int added = FIRST_INDEX;
+            int target = FIRST_INDEX;
+            while (existing < chars.length || added < keys.length) {
+                long existingKey = existing < chars.length ? key(existing) : Long.MAX_VALUE;
+                long addedKey = added < keys.length ? keys[added] : Long.MAX_VALUE;
+                if (existingKey <= addedKey) {
+                    newBrightnesses[target] = brightnesses[existing];
+                    newChars[target++] = chars[existing++];
+                    if (existingKey == addedKey) {
+                        added++;
+                    }
+                } else {
+                    newBrightnesses[target] = Float.intBitsToFloat((int) (addedKey >>> BRIGHTNESS_SHIFT));
+                    newChars[target++] = (char) addedKey;
+                    added++;
+                }
+            }
+            if (target == chars.length) {
+                return this;
+            }
+            return new Snapshot(maskAtlas, Arrays.copyOf(newBrightnesses, target), Arrays.copyOf(newChars, target));
+        }
+
+        /**
+         * Builds the snapshot with the given characters removed. Characters not in the set are skipped.
+         *
+         * @param keys the sort keys of the characters to remove, in ascending order and without duplicates.
+         * @return the new snapshot, or this one if no character is removed.
+         */
+        private Snapshot withRemoved(long[] keys) {
+            float[] newBrightnesses = new float[chars.length];
+            char[] newChars = new char[chars.length];
+            int removed = FIRST_INDEX;
+            int target = FIRST_INDEX;
+            for (int i = 0; i < chars.length; i++) {
+                long key = key(i);
+                while (removed < keys.length && keys[removed] < key) {
+                    removed++;
+                }
+                if (removed == keys.length || keys[removed] != key) {
+                    newBrightnesses[target] = brightnesses[i];
+                    newChars[target++] = chars[i];
+                }
+            }
+            if (target == chars.length) {
+                return this;
+            }
+            return new Snapshot(maskAtlas, Arrays.copyOf(newBrightnesses, target), Arrays.copyOf(newChars, target));
+        }
+
+        /**
+         * Gets the sort key of a character of the set.
+         *
+         * @param index the index of the character.
+         * @return the sort key.
+         */
+        private long key(int index) {
+            return sortKey(brightnesses[index], chars[index]);
+        }
+
+        /**
+         * Searches the character set for the character matching the specified brightness value: the characters of
+         * the closest normalized brightness, the lower one on a tie, and among them the one with the lowest ASCII
+         * value.
+         *
+         * @param brightness the brightness value of the image.
+         * @return the character corresponding to the given brightness value.
+         */
+        private char searchCharByBrightness(float brightness) {
+            int closest = searchClosestCharacters(brightness);
+            if (closest != NOT_FOUND)
+                return asciiMinValue(closest);
+            return SPACE_CHAR;
+        }
+
+        /**
+         * Binary searches the character set for the characters of the normalized brightness closest to the specified
+         * brightness value, the lower one on a tie. Normalized brightness values are compared as by Float.compare.
+         *
+         * @param brightness the brightness value of the image.
+         * @return the index of the first character with the closest normalized brightness, or NOT_FOUND if none is
+         * comparable to the value.
+         */
+        private int searchClosestCharacters(float brightness) {
+            int low = firstNotBelow(brightness);
+            if (low < chars.length && Float.compare(normalBrightness(low), brightness) == 0) {
+                return low;
+            }
+            int closestUp = low < chars.length ? low : NOT_FOUND;
+            int closestDown = low > FIRST_INDEX ? firstOfGroup(low - 1) : NOT_FOUND;
+            return getClosestCharacters(brightness, closestUp, closestDown);
+        }
+
+        /**
+         * Binary searches the character set for the first character whose normalized brightness is not below a
+         * value, comparing as by Float.compare.
+         *
+         * @param brightness the value.
+         * @return the index of the first character not below the value, or the size of the set if there is none.
+         */
+        private int firstNotBelow(float brightness) {
+            int low = FIRST_INDEX;
+            int high = chars.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (Float.compare(normalBrightness(middle), brightness) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Gets the masks of the characters of the set, gathering them the first time.
+         *
+         * @return the mask of each character, in the order of the set.
+         */
+        private long[][] getGlyphMasks() {
+            long[][] masks = glyphMasks;
+            if (masks == null) {
+                maskAtlas.prepare(chars);
+                masks = new long[chars.length][];
+                for (int i = 0; i < chars.length; i++) {
+                    masks[i] = maskAtlas.getBitmap(chars[i]);
+                }
+                glyphMasks = masks;
+            }
+            return masks;
+        }
+
+        /**
+         * Retrieves the characters of the closest character brightness value to the specified brightness value.
+         *
+         * @param brightness  the brightness value of the image.
+         * @param closestUp   the index of the first character above the value, or NOT_FOUND.
+         * @param closestDown the index of the first character below the value, or NOT_FOUND.
+         * @return the index of the first character corresponding to the given brightness value, or NOT_FOUND.
+         */
+        private int getClosestCharacters(float brightness, int closestUp, int closestDown) {
+            float disFromUp = (closestUp != NOT_FOUND) ?
+                    Math.abs(normalBrightness(closestUp) - brightness) : Float.MAX_VALUE;
+            float disFromDown = (closestDown != NOT_FOUND) ?
+                    Math.abs(normalBrightness(closestDown) - brightness) : Float.MAX_VALUE;
+
+            if (closestUp != NOT_FOUND && disFromUp < disFromDown) {
+                return closestUp;
+            }
+            return closestDown;
+        }
+
+        /**
+         * Builds the lookup table of the character set. The closest normalized brightness never decreases as the
+         * brightness grows, so a bucket whose lowest and highest float values have the same closest normalized
+         * brightness has it for every value in between.
+         *
+         * @return the lookup table.
+         */
+        private int[] buildLookupTable() {
+            int[] table = new int[LOOKUP_BUCKETS + 1];
+            for (int bucket = 0; bucket < LOOKUP_BUCKETS; bucket++) {
+                float low = (float) bucket / LOOKUP_BUCKETS;
+                float high = Math.nextDown((float) (bucket + 1) / LOOKUP_BUCKETS);
+                table[bucket] = searchClosestCharacters(low) == searchClosestCharacters(high) ?
+                        searchCharByBrightness(low) : NO_SINGLE_CHAR;
+            }
+            table[LOOKUP_BUCKETS] = searchCharByBrightness(1f);
+            return table;
+        }
+
+        /**
+         * Finds the first character of the set having the same normalized brightness as the character at the given
+         * index.
+         *
+         * @param index the index of a character.
+         * @return the index of the first character with the same normalized brightness.
+         */
+        private int firstOfGroup(int index) {
+            float normalBrightness = normalBrightness(index);
+            while (index > FIRST_INDEX && Float.compare(normalBrightness(index - 1), normalBrightness) == 0) {
+                index--;
+            }
+            return index;
+        }
+
+        /**
+         * Retrieves the character with the minimum ASCII value among the characters having the same normalized
+         * brightness as the character at the given index.
+         *
+         * @param first the index of the first character with this normalized brightness.
+         * @return the character with the minimum ASCII value.
+         */
+        private char asciiMinValue(int first) {
+            float normalBrightness = normalBrightness(first);
+            char minAsciiChar = chars[first];
+            for (int i = first + 1; i < chars.length && Float.compare(normalBrightness(i), normalBrightness) == 0;
+                 i++) {
+                if (chars[i] < minAsciiChar) {
+                    minAsciiChar = chars[i];
                 }
             }
+            return minAsciiChar;
+        }
+
+        /**
+         * Calculates the normalized brightness value of a character of the set, relative to the darkest and brightest
+         * characters of the set. When all the characters have the same brightness, they all get the same normalized
+         * value.
+         *
+         * @param index the index of the character.
+         * @return the normalized brightness value.
+         */
+        private float normalBrightness(int index) {
+            float minCharBrightness = brightnesses[FIRST_INDEX];
+            float maxCharBrightness = brightnesses[brightnesses.length - 1];
+            if (maxCharBrightness == minCharBrightness) {
+                return DEGENERATE_NORMAL_BRIGHTNESS;
+            }
+            return (brightnesses[index] - minCharBrightness) / (maxCharBrightness - minCharBrightness);
         }
-        return (float) count / (greyArray.length * greyArray[FIRST_INDEX].length);
     }
 
+    //endregion
+
+    //region PRIVATE METHODS
+
     /**
-     * Calculates the normalized brightness value of a character.
+     * Makes the sort keys of characters, rendering the characters not rendered yet.
      *
-     * @param c The character.
-     * @return the normalized brightness value.
+     * @param charsToKey the characters, possibly with duplicates.
+     * @return the sort keys, in ascending order and without duplicates.
      */
-    private float normalBrightness(char c) {
-        return (getCharBrightness(c) - minCharBrightness) /
-                (maxCharBrightness - minCharBrightness);
-
+    private long[] sortedKeys(char[] charsToKey) {
+        char[] toRender = new char[charsToKey.length];
+        int count = 0;
+        for (char c : charsToKey) {
+            if (!glyphTable.contains(c)) {
+                toRender[count++] = c;
+            }
+        }
+        glyphAtlas.prepare(Arrays.copyOf(toRender, count));
+        long[] keys = new long[charsToKey.length];
+        for (int i = 0; i < charsToKey.length; i++) {
+            keys[i] = sortKey(getCharBrightness(charsToKey[i]), charsToKey[i]);
+        }
+        Arrays.sort(keys);
+        int unique = 0;
+        for (long key : keys) {
+            if (unique == 0 || key != keys[unique - 1]) {
+                keys[unique++] = key;
+            }
+        }
+        return Arrays.copyOf(keys, unique);
     }
 
     /**
-     * Updates the mapping of normalized brightness values to characters.
+     * Lists the characters of a range.
+     *
+     * @param first the first character of the range.
+     * @param last  the last character of the range, inclusive.
+     * @return the characters of the range, empty if the last is before the first.
      */
-    private void updateNormalMap() {
-        TreeMap<Float, List<Character>> tempMap = new TreeMap<>(Collections.reverseOrder());
-        for (Map.Entry<Float, List<Character>> entry : floatToCharsMap.entrySet()) {
-            List<Character> characterList = entry.getValue();
-            float newKey = normalBrightness(characterList.get(FIRST_INDEX));
-            tempMap.put(newKey, characterList);
+    private static char[] charsInRange(char first, char last) {
+        char[] range = new char[Math.max(0, last - first + 1)];
+        for (int i = 0; i < range.length; i++) {
+            range[i] = (char) (first + i);
         }
-
-        floatToCharsMap.clear();
-
-        floatToCharsMap.putAll(tempMap);
-
+        return range;
     }
 
     /**
-     * Initializes the mapping of normalized brightness values to characters.
+     * Makes a key ordering characters as the set does, by brightness and then by character. Brightness values are
+     * never negative, so the order of their bits is the order of the values.
+     *
+     * @param brightness the brightness of the character.
+     * @param c          the character.
+     * @return the sort key.
      */
-    private void initNormalMap() {
-        for (Map.Entry<Character, Float> pair : charBrightnessHistoryMap.entrySet()) {
-            float cNormalBrightness = normalBrightness(pair.getKey());
-            List<Character> cBrightnessList = floatToCharsMap.get(cNormalBrightness);
-            if (cBrightnessList == null) {
-                floatToCharsMap.put(cNormalBrightness, new ArrayList<>());
-                cBrightnessList = floatToCharsMap.get(cNormalBrightness);
-            }
-            cBrightnessList.add(pair.getKey());
+    private static long sortKey(float brightness, char c) {
+        return ((long) Float.floatToIntBits(brightness) << BRIGHTNESS_SHIFT) | c;
+    }
 
+    /**
+     * Retrieves the brightness value of a character, from the saved table when it holds the character, or else from
+     * the atlas, which renders it the first time.
+     *
+     * @param c The character.
+     * @return the brightness value.
+     */
+    private float getCharBrightness(char c) {
+        if (glyphTable.contains(c)) {
+            return glyphTable.getBrightness(c);
         }
+        return glyphAtlas.getBrightness(c);
     }
 
     //endregion
@@ -0,0 +1,142 @@
+package ascii_art;
+
+import image.Image;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+
+import static fixtures.Fixtures.FIRST_PRINTABLE;
+import static fixtures.Fixtures.LAST_PRINTABLE;
+import static fixtures.Fixtures.RUNS;
+import static fixtures.Fixtures.millisSince;
+import static fixtures.Fixtures.photoPixels;
+import static image.ImageToBrightnessesFacade.greyBrightnessesByResolution;
+import static image.ImageToBrightnessesFacade.tileMasksByResolution;
+
+/**
+ * A benchmark of the shape mode against the brightness-only mode, in cells matched per second. For each resolution the
+ * brightness grid and the tile masks are computed once, the masks being timed as part of the cost of the shape mode,
+ * then the whole grid is matched in both modes, with the default charset and with all the printable ASCII characters.
+ * <p>
+ * Usage: {@code ShapeMatchingBenchmark [image file]}; without a file, a 4000 x 3000 image is generated.
+ */
+class ShapeMatchingBenchmark {
+    //region CONSTANT VARIABLES
+    /**
+     * The width of the generated image.
+     */
+    private static final int WIDTH = 4000;
+
+    /**
+     * The height of the generated image.
+     */
+    private static final int HEIGHT = 3000;
+
+    /**
+     * The resolutions measured, up to one cell per pixel of the generated image.
+     */
+    private static final int[] RESOLUTIONS = {128, 512, 1024, 4096};
+
+    /**
+     * The default charset of the shell.
+     */
+    private static final char[] DEFAULT_CHARS = "0123456789".toCharArray();
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The number of cells in the unit of the reported rates.
+     */
+    private static final double CELLS_PER_MILLION = 1e6;
+
+    /**
+     * The factor of a ratio to a percentage.
+     */
+    private static final double PERCENT = 100;
+
+    /**
+     * The side in pixels of the squares of the generated image.
+     */
+    private static final int SQUARE_SIDE = 250;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args an optional image file to use instead of the generated one.
+     * @throws IOException if the image file cannot be decoded.
+     */
+    public static void main(String[] args) throws IOException {
+        Image image = args.length > 0 ? new Image(args[0]) :
+                new Image(photoPixels(WIDTH, HEIGHT, SQUARE_SIDE), WIDTH, HEIGHT);
+        SubImgCharMatcher defaultChars = new SubImgCharMatcher(DEFAULT_CHARS);
+        SubImgCharMatcher printable = new SubImgCharMatcher(new char[0]);
+        printable.addCharsInRange(FIRST_PRINTABLE, LAST_PRINTABLE);
+        System.out.printf("%d x %d image%n", image.getWidth(), image.getHeight());
+        for (int resolution : RESOLUTIONS) {
+            // The padded width is the finest resolution, one tile per pixel.
+            if (resolution > Integer.highestOneBit(Math.max(1, image.getWidth() - 1)) * 2) {
+                break;
+            }
+            float[][] brightnessArray = greyBrightnessesByResolution(image, resolution);
+            long start = System.nanoTime();
+            long[][] tileMasks = tileMasksByResolution(image, resolution);
+            double masksMillis = millisSince(start);
+            long cells = (long) brightnessArray.length * brightnessArray[0].length;
+            System.out.printf("res %d: %d cells, tile masks %.1f ms%n", resolution, cells, masksMillis);
+            measure("  " + DEFAULT_CHARS.length + " chars", brightnessArray, tileMasks, defaultChars.getSnapshot(),
+                    cells);
+            measure("  " + (LAST_PRINTABLE - FIRST_PRINTABLE + 1) + " chars", brightnessArray, tileMasks,
+                    printable.getSnapshot(), cells);
+        }
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Measures both modes on one grid and one charset.
+     *
+     * @param name            the name of the charset, for the report.
+     * @param brightnessArray the brightness of each tile.
+     * @param tileMasks       the masks of the tiles.
+     * @param charset         the charset.
+     * @param cells           the number of tiles.
+     */
+    private static void measure(String name, float[][] brightnessArray, long[][] tileMasks,
+                                SubImgCharMatcher.Snapshot charset, long cells) {
+        long bestBrightness = Long.MAX_VALUE;
+        long bestShape = Long.MAX_VALUE;
+        long differing = 0;
+        for (int run = 0; run < 2 * RUNS; run++) {
+            long start = System.nanoTime();
+            char[][] byBrightness = AsciiArtAlgorithm.matchBrightness(brightnessArray, charset);
+            long brightness = System.nanoTime() - start;
+            start = System.nanoTime();
+            char[][] byShape = AsciiArtAlgorithm.matchShape(brightnessArray, tileMasks, charset);
+            long shape = System.nanoTime() - start;
+            if (run >= RUNS) {
+                bestBrightness = Math.min(bestBrightness, brightness);
+                bestShape = Math.min(bestShape, shape);
+            }
+            differing = 0;
+            for (int i = 0; i < byShape.length; i++) {
+                for (int j = 0; j < byShape[i].length; j++) {
+                    differing += byShape[i][j] != byBrightness[i][j] ? 1 : 0;
+                }
+            }
+        }
+        System.out.printf("%s: brightness %.1f M cells/s, shape %.1f M cells/s (%.1fx slower), " +
+                        "%.0f%% of cells differ%n", name, cells * NANOS_PER_SECOND / bestBrightness / CELLS_PER_MILLION,
+                cells * NANOS_PER_SECOND / bestShape / CELLS_PER_MILLION, (double) bestShape / bestBrightness,
+                PERCENT * differing / cells);
+    }
+    //endregion
+}
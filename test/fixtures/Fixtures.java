@@ -0,0 +1,216 @@
+package fixtures;
+
+import image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The fixtures shared by the checks and benchmarks: the generated images they run on when no file is given, the
+ * character ranges they match against, and the constants that keep their runs reproducible and their timings
+ * comparable.
+ */
+public final class Fixtures {
+    //region CONSTANT VARIABLES
+    /**
+     * The number of timed runs of a benchmark, after as many warm-up runs.
+     */
+    public static final int RUNS = 5;
+
+    /**
+     * The seed of the random values, so that runs are comparable and a failure can be reproduced.
+     */
+    public static final long SEED = 0x5EED;
+
+    /**
+     * The first printable ASCII character.
+     */
+    public static final char FIRST_PRINTABLE = ' ';
+
+    /**
+     * The last printable ASCII character.
+     */
+    public static final char LAST_PRINTABLE = '~';
+
+    /**
+     * The first character of the box drawing block, rendered through the atlas rather than the saved table.
+     */
+    public static final char FIRST_BOX_DRAWING = '\u2500';
+
+    /**
+     * The last character of the box drawing block.
+     */
+    public static final char LAST_BOX_DRAWING = '\u257F';
+
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * The multiplier of the pseudo-random pixel values.
+     */
+    private static final int PIXEL_MIX = 0x9E3779B1;
+
+    /**
+     * The mask of one color channel.
+     */
+    private static final int CHANNEL_MASK = 0xFF;
+
+    /**
+     * The largest value of a color channel.
+     */
+    private static final int MAX_CHANNEL = 255;
+
+    /**
+     * The bit offset of the red channel in a packed pixel.
+     */
+    private static final int RED_SHIFT = 16;
+
+    /**
+     * The bit offset of the green channel in a packed pixel.
+     */
+    private static final int GREEN_SHIFT = 8;
+
+    /**
+     * The blue value of the dark squares of a photo-like image.
+     */
+    private static final int DARK_BLUE = 40;
+
+    /**
+     * The blue value of the light squares of a photo-like image.
+     */
+    private static final int LIGHT_BLUE = 210;
+
+    /**
+     * The prefix of the temporary image files.
+     */
+    private static final String TEMP_PREFIX = "fixture";
+    //endregion
+
+
+    //region CONSTRUCTORS
+
+    /**
+     * Prevents instantiation; the fixtures are static.
+     */
+    private Fixtures() {
+    }
+    //endregion
+
+
+    //region API
+
+    /**
+     * Converts a duration to milliseconds.
+     *
+     * @param nanos the duration in nanoseconds.
+     * @return the duration in milliseconds.
+     */
+    public static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Measures the time elapsed since a start time.
+     *
+     * @param startNanos the start time, from {@link System#nanoTime()}.
+     * @return the elapsed time in milliseconds.
+     */
+    public static double millisSince(long startNanos) {
+        return millis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Generates the packed pixels of an image of pseudo-random values, which no smooth estimate can guess.
+     *
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the packed RGB values in row-major order.
+     */
+    public static int[] noisePixels(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (i * PIXEL_MIX) >>> Byte.SIZE;
+        }
+        return pixels;
+    }
+
+    /**
+     * Generates an image of pseudo-random values.
+     *
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the image.
+     * @see #noisePixels(int, int)
+     */
+    public static Image noiseImage(int width, int height) {
+        return new Image(noisePixels(width, height), width, height);
+    }
+
+    /**
+     * Generates the packed pixels of an image whose channels wrap around every 256 pixels, so that it has every value
+     * of every channel and compresses like a synthetic image.
+     *
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @return the packed RGB values in row-major order.
+     */
+    public static int[] gradientPixels(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = (x & CHANNEL_MASK) << RED_SHIFT | (y & CHANNEL_MASK) << GREEN_SHIFT |
+                        ((x + y) & CHANNEL_MASK);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Generates the packed pixels of a photo-like image: smooth gradients under a grid of squares with sharp edges.
+     *
+     * @param width      the width of the image.
+     * @param height     the height of the image.
+     * @param squareSide the side of the squares in pixels.
+     * @return the packed RGB values in row-major order.
+     */
+    public static int[] photoPixels(int width, int height, int squareSide) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = x * MAX_CHANNEL / width;
+                int green = y * MAX_CHANNEL / height;
+                int blue = (x / squareSide + y / squareSide) % 2 == 0 ? DARK_BLUE : LIGHT_BLUE;
+                pixels[y * width + x] = red << RED_SHIFT | green << GREEN_SHIFT | blue;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Writes generated pixels to a temporary image file.
+     *
+     * @param pixels the packed RGB values in row-major order.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @param type   the type of the image written, such as {@link BufferedImage#TYPE_INT_RGB}.
+     * @param format the format of the file, such as "png".
+     * @return the file, deleted when the program exits.
+     * @throws IOException if the file cannot be written.
+     */
+    public static File writeTempImage(int[] pixels, int width, int height, int type, String format)
+            throws IOException {
+        BufferedImage image = new BufferedImage(width, height, type);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        File file = File.createTempFile(TEMP_PREFIX, "." + format);
+        file.deleteOnExit();
+        if (!ImageIO.write(image, format, file)) {
+            throw new IOException("Did not write " + file + " due to no " + format + " writer for type " + type);
+        }
+        return file;
+    }
+    //endregion
+}
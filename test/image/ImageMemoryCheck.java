@@ -0,0 +1,127 @@
+package image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import static fixtures.Fixtures.gradientPixels;
+import static fixtures.Fixtures.writeTempImage;
+
+/**
+ * A check of the heap cost of a decoded {@link Image}: a photo-sized image is written to a temporary file, decoded,
+ * and the heap retained by the Image is measured once the decoder's temporary objects are collected. The check fails
+ * if a pixel costs more than 4 bytes, the size of one packed int, besides a small fixed overhead.
+ * <p>
+ * The heap is then measured again once the {@link SummedAreaTable} of the image is built, as it is by the first
+ * brightness computation. The table holds one double per pixel plus a border row and column, so a rendered image
+ * retains about 12 bytes per pixel, and the check fails if the table costs more than its entries.
+ * <p>
+ * Usage: {@code ImageMemoryCheck [image file]}; without a file, a 4000 x 3000 image is generated.
+ */
+class ImageMemoryCheck {
+    //region CONSTANT VARIABLES
+    /**
+     * The width of the generated image.
+     */
+    private static final int WIDTH = 4000;
+
+    /**
+     * The height of the generated image.
+     */
+    private static final int HEIGHT = 3000;
+
+    /**
+     * The largest accepted number of retained bytes per pixel.
+     */
+    private static final double MAX_BYTES_PER_PIXEL = 4.0;
+
+    /**
+     * The number of bytes of one entry of the summed-area table, whose entries are doubles.
+     */
+    private static final int TABLE_ENTRY_BYTES = Double.BYTES;
+
+    /**
+     * The retained bytes not owned by the image pixels that are tolerated: the Image fields and the heap noise of a
+     * garbage collection.
+     */
+    private static final long FIXED_OVERHEAD_BYTES = 256 * 1024;
+
+    /**
+     * The number of garbage collections requested before reading the used heap.
+     */
+    private static final int GC_ROUNDS = 4;
+
+    /**
+     * The pause after each requested garbage collection, in milliseconds.
+     */
+    private static final long GC_PAUSE_MILLIS = 50;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the check.
+     *
+     * @param args an optional image file to decode instead of the generated one.
+     * @throws IOException          if the image cannot be written or decoded.
+     * @throws InterruptedException if interrupted while waiting for a garbage collection.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File file = args.length > 0 ? new File(args[0]) :
+                writeTempImage(gradientPixels(WIDTH, HEIGHT), WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB, "png");
+        // Decode and build a table once first, so that the classes and caches of ImageIO and the threads building the
+        // table are not counted as image memory.
+        new Image(file.getPath()).getSummedAreaTable();
+        long before = usedHeap();
+        Image image = new Image(file.getPath());
+        long after = usedHeap();
+        long pixels = (long) image.getWidth() * image.getHeight();
+        double bytesPerPixel = (double) (after - before) / pixels;
+        System.out.printf("%d x %d image: %.2f retained bytes per pixel (Color[][] took about 24)%n",
+                image.getWidth(), image.getHeight(), bytesPerPixel);
+        check(after - before, (long) (pixels * MAX_BYTES_PER_PIXEL));
+        // The table the first brightness computation builds is kept with the image for the other resolutions.
+        SummedAreaTable table = image.getSummedAreaTable();
+        long rendered = usedHeap();
+        System.out.printf("with its summed-area table: %.2f retained bytes per pixel%n",
+                (double) (rendered - before) / pixels);
+        long entries = (image.getWidth() + 1L) * (image.getHeight() + 1L);
+        check(rendered - after, entries * TABLE_ENTRY_BYTES);
+        // Keep the image and its table reachable until the heap was measured.
+        System.out.println("OK, first pixel " + Integer.toHexString(image.getRGB(0, 0)) + ", total grey "
+                + table.getSum(0, 0, image.getHeight(), image.getWidth()));
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Checks that the retained heap fits the expected number of bytes, besides the fixed overhead.
+     *
+     * @param retained the number of retained bytes.
+     * @param expected the largest accepted number of bytes.
+     */
+    private static void check(long retained, long expected) {
+        if (retained - FIXED_OVERHEAD_BYTES > expected) {
+            throw new AssertionError("Did not fit " + retained + " retained bytes in the expected " + expected);
+        }
+    }
+
+    /**
+     * Measures the used heap after collecting the garbage.
+     *
+     * @return the number of used heap bytes.
+     * @throws InterruptedException if interrupted while waiting for a garbage collection.
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+            Thread.sleep(GC_PAUSE_MILLIS);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    //endregion
+}
@@ -0,0 +1,101 @@
+package image;
+
+import java.util.Arrays;
+
+import static fixtures.Fixtures.RUNS;
+import static fixtures.Fixtures.millis;
+import static fixtures.Fixtures.noisePixels;
+
+/**
+ * A benchmark of the parallel brightness computation: the summed-area table and the brightness grid of a large image
+ * are computed with 1, 2, 4... threads up to the number of available processors, and the speedup over one thread is
+ * reported. Every run must give exactly the grid of the sequential run.
+ * <p>
+ * Usage: {@code ParallelScalingBenchmark [max threads [width height]]}; by default all the available processors and a
+ * 6000 x 4000 image, at resolution 1024.
+ */
+class ParallelScalingBenchmark {
+    //region CONSTANT VARIABLES
+    /**
+     * The default width of the generated image.
+     */
+    private static final int DEFAULT_WIDTH = 6000;
+
+    /**
+     * The default height of the generated image.
+     */
+    private static final int DEFAULT_HEIGHT = 4000;
+
+    /**
+     * The resolution the brightness grid is computed at.
+     */
+    private static final int RESOLUTION = 1024;
+
+    /**
+     * The factor between two thread counts.
+     */
+    private static final int THREAD_FACTOR = 2;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the optional maximum number of threads, then the optional size of the image.
+     */
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int width = args.length > 2 ? Integer.parseInt(args[1]) : DEFAULT_WIDTH;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_HEIGHT;
+        int[] pixels = noisePixels(width, height);
+        int initialParallelism = ParallelRange.getParallelism();
+        float[][] sequential = null;
+        double sequentialMillis = 0;
+        try {
+            for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+                ParallelRange.setParallelism(threads);
+                float[][] grid = null;
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < 2 * RUNS; run++) {
+                    // A new Image has no summed-area table yet, so each run builds it again.
+                    Image image = new Image(pixels, width, height);
+                    long start = System.nanoTime();
+                    grid = ImageToBrightnessesFacade.greyBrightnessesByResolution(image, RESOLUTION);
+                    if (run >= RUNS) {
+                        best = Math.min(best, System.nanoTime() - start);
+                    }
+                }
+                double millis = millis(best);
+                if (sequential == null) {
+                    sequential = grid;
+                    sequentialMillis = millis;
+                } else if (!Arrays.deepEquals(sequential, grid)) {
+                    throw new AssertionError(threads + " threads give another grid than 1 thread");
+                }
+                System.out.printf("%d thread(s): %.1f ms, speedup %.2fx%n", threads, millis,
+                        sequentialMillis / millis);
+            }
+        } finally {
+            ParallelRange.setParallelism(initialParallelism);
+        }
+        System.out.println("OK, identical grids for every thread count");
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Gets the next thread count to measure: the double of the current one, or the maximum if it lies in between.
+     *
+     * @param threads    the current thread count.
+     * @param maxThreads the maximum thread count.
+     * @return the next thread count, above the maximum when the current one is the maximum.
+     */
+    private static int nextThreadCount(int threads, int maxThreads) {
+        return threads < maxThreads ? Math.min(threads * THREAD_FACTOR, maxThreads) : maxThreads + 1;
+    }
+    //endregion
+}
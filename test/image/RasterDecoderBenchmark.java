@@ -0,0 +1,122 @@
+package image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static fixtures.Fixtures.RUNS;
+import static fixtures.Fixtures.gradientPixels;
+import static fixtures.Fixtures.millis;
+import static fixtures.Fixtures.millisSince;
+import static fixtures.Fixtures.writeTempImage;
+
+/**
+ * A benchmark of loading an image: decoding the file, then converting the decoded image to packed pixels either with
+ * {@link RasterDecoder} or with one getRGB call per pixel, as Image did before. The two conversions are also checked
+ * to give the same pixels.
+ * <p>
+ * Usage: {@code RasterDecoderBenchmark [image file...]}; without files, a 12 megapixel JPEG and a 12 megapixel grey
+ * PNG are generated.
+ */
+class RasterDecoderBenchmark {
+    //region CONSTANT VARIABLES
+    /**
+     * The width of the generated images.
+     */
+    private static final int WIDTH = 4000;
+
+    /**
+     * The height of the generated images.
+     */
+    private static final int HEIGHT = 3000;
+
+    /**
+     * Mask keeping the red, green and blue bytes of a packed pixel.
+     */
+    private static final int RGB_MASK = 0xFFFFFF;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the image files to load; generated images are used when there are none.
+     * @throws IOException if an image cannot be written or decoded.
+     */
+    public static void main(String[] args) throws IOException {
+        File[] files = args.length > 0 ? Arrays.stream(args).map(File::new).toArray(File[]::new) :
+                new File[]{generate(BufferedImage.TYPE_3BYTE_BGR, "jpg"), generate(BufferedImage.TYPE_BYTE_GRAY,
+                        "png")};
+        for (File file : files) {
+            long start = System.nanoTime();
+            BufferedImage decoded = ImageIO.read(file);
+            double fileMillis = millisSince(start);
+            if (!Arrays.equals(RasterDecoder.decode(decoded), decodePerPixel(decoded))) {
+                throw new AssertionError("The bulk decode differs from getRGB on " + file);
+            }
+            double bulkMillis = time(() -> RasterDecoder.decode(decoded));
+            double perPixelMillis = time(() -> decodePerPixel(decoded));
+            System.out.printf("%s (%d x %d, type %d): file decode %.0f ms, per-pixel getRGB %.1f ms, bulk %.1f ms " +
+                            "(%.1fx), load %.0f ms -> %.0f ms%n", file.getName(), decoded.getWidth(),
+                    decoded.getHeight(), decoded.getType(), fileMillis, perPixelMillis, bulkMillis,
+                    perPixelMillis / bulkMillis, fileMillis + perPixelMillis, fileMillis + bulkMillis);
+        }
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Converts a decoded image to packed pixels with one getRGB call per pixel.
+     *
+     * @param im the decoded image.
+     * @return the packed RGB values of the image in row-major order.
+     */
+    private static int[] decodePerPixel(BufferedImage im) {
+        int width = im.getWidth();
+        int[] pixels = new int[width * im.getHeight()];
+        for (int i = 0; i < im.getHeight(); i++) {
+            for (int j = 0; j < width; j++) {
+                pixels[i * width + j] = im.getRGB(j, i) & RGB_MASK;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Times a conversion, keeping the best of the timed runs.
+     *
+     * @param conversion the conversion.
+     * @return the best time in milliseconds.
+     */
+    private static double time(Runnable conversion) {
+        for (int i = 0; i < RUNS; i++) {
+            conversion.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            conversion.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return millis(best);
+    }
+
+    /**
+     * Writes a generated image with a gradient to a temporary file.
+     *
+     * @param type   the type of the generated image.
+     * @param format the format of the file.
+     * @return the file, deleted when the program exits.
+     * @throws IOException if the file cannot be written.
+     */
+    private static File generate(int type, String format) throws IOException {
+        return writeTempImage(gradientPixels(WIDTH, HEIGHT), WIDTH, HEIGHT, type, format);
+    }
+    //endregion
+}
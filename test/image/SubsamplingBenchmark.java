@@ -0,0 +1,153 @@
+package image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static fixtures.Fixtures.millisSince;
+import static fixtures.Fixtures.photoPixels;
+import static fixtures.Fixtures.writeTempImage;
+import static image.ImageBrightnessCalculator.getGreyVal;
+import static image.RappedImage.HALF_VAL;
+import static image.RappedImage.findClosestPowerOf2;
+
+/**
+ * A benchmark of the subsampled decode of the fast mode against a full decode, at several resolutions, which also
+ * checks the accuracy bound documented on
+ * {@link ImageToBrightnessesFacade#greyBrightnessesBySubsampling(StreamedImage, int)}: on every tile lying inside the
+ * image, the estimated brightness differs from the exact one by at most the largest grey range found inside one
+ * sampling cell of the tile.
+ * <p>
+ * Usage: {@code SubsamplingBenchmark [image file]}; without a file, a 6000 x 4000 JPEG is generated.
+ */
+class SubsamplingBenchmark {
+    //region CONSTANT VARIABLES
+    /**
+     * The width of the generated image.
+     */
+    private static final int WIDTH = 6000;
+
+    /**
+     * The height of the generated image.
+     */
+    private static final int HEIGHT = 4000;
+
+    /**
+     * The side in pixels of the squares of the generated image.
+     */
+    private static final int SQUARE_SIDE = 500;
+
+    /**
+     * The resolutions measured.
+     */
+    private static final int[] RESOLUTIONS = {16, 32, 64, 128, 256};
+
+    /**
+     * The minimal number of samples per tile side, as in StreamedImage.
+     */
+    private static final int MIN_SAMPLES_PER_SIDE = 8;
+
+    /**
+     * The maximum grey value, the unit of the brightness values.
+     */
+    private static final float MAX_GREY = 255;
+
+    /**
+     * The tolerance added to the bound, for float rounding.
+     */
+    private static final double ROUNDING_TOLERANCE = 1e-5;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args an optional image file to use instead of the generated one.
+     * @throws IOException if the image cannot be written or decoded.
+     */
+    public static void main(String[] args) throws IOException {
+        String filename = args.length > 0 ? args[0] :
+                writeTempImage(photoPixels(WIDTH, HEIGHT, SQUARE_SIDE), WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB,
+                        "jpg").getPath();
+        StreamedImage streamed = StreamedImage.open(filename);
+        // Warm both paths up once.
+        streamed.readBrightnesses(RESOLUTIONS[0], true);
+        long start = System.nanoTime();
+        Image image = new Image(filename);
+        double decodeMillis = millisSince(start);
+        System.out.printf("%s, %d x %d: full decode %.0f ms%n", filename, image.getWidth(), image.getHeight(),
+                decodeMillis);
+        for (int resolution : RESOLUTIONS) {
+            if (resolution > findClosestPowerOf2(image.getWidth())) {
+                break;
+            }
+            start = System.nanoTime();
+            float[][] estimated = streamed.readBrightnesses(resolution, true);
+            double subsampledMillis = millisSince(start);
+            float[][] exact = ImageToBrightnessesFacade.greyBrightnessesByResolution(image, resolution);
+            double worstError = 0;
+            double worstExcess = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < exact.length; i++) {
+                for (int j = 0; j < exact[i].length; j++) {
+                    double error = Math.abs(estimated[i][j] - exact[i][j]);
+                    worstError = Math.max(worstError, error);
+                    double bound = interiorBound(image, resolution, i, j);
+                    if (bound >= 0) {
+                        worstExcess = Math.max(worstExcess, error - bound);
+                    }
+                }
+            }
+            if (worstExcess > ROUNDING_TOLERANCE) {
+                throw new AssertionError("Resolution " + resolution + ": an interior tile exceeds the bound by " +
+                        worstExcess);
+            }
+            System.out.printf("res %d: subsampled %.0f ms (%.1fx faster), max error %.4f, within the bound%n",
+                    resolution, subsampledMillis, decodeMillis / subsampledMillis, worstError);
+        }
+        System.out.println("OK");
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Computes the documented error bound of a tile: the largest grey range inside one sampling cell of the tile.
+     *
+     * @param image      the decoded image.
+     * @param resolution the resolution.
+     * @param row        the tile row.
+     * @param col        the tile column.
+     * @return the bound in brightness units, or -1 if the tile does not lie entirely inside the image.
+     */
+    private static double interiorBound(Image image, int resolution, int row, int col) {
+        int paddedWidth = findClosestPowerOf2(image.getWidth());
+        int tileSize = paddedWidth / resolution;
+        int period = Integer.highestOneBit(Math.max(1, tileSize / MIN_SAMPLES_PER_SIDE));
+        int top = row * tileSize - (findClosestPowerOf2(image.getHeight()) - image.getHeight()) / HALF_VAL;
+        int left = col * tileSize - (paddedWidth - image.getWidth()) / HALF_VAL;
+        if (top < 0 || left < 0 || top + tileSize > image.getHeight() || left + tileSize > image.getWidth()) {
+            return -1;
+        }
+        // Cells are aligned on the padded image, and tiles start on multiples of the period, so the cells of an
+        // interior tile are aligned on the tile.
+        double worstRange = 0;
+        for (int cellTop = top; cellTop < top + tileSize; cellTop += period) {
+            for (int cellLeft = left; cellLeft < left + tileSize; cellLeft += period) {
+                float min = Float.MAX_VALUE;
+                float max = -Float.MAX_VALUE;
+                for (int y = cellTop; y < cellTop + period; y++) {
+                    for (int x = cellLeft; x < cellLeft + period; x++) {
+                        float grey = getGreyVal(image.getRGB(y, x));
+                        min = Math.min(min, grey);
+                        max = Math.max(max, grey);
+                    }
+                }
+                worstRange = Math.max(worstRange, (max - min) / MAX_GREY);
+            }
+        }
+        return worstRange;
+    }
+    //endregion
+}
@@ -0,0 +1,127 @@
+package image;
+
+import java.io.IOException;
+
+import static fixtures.Fixtures.noiseImage;
+import static image.ImageBrightnessCalculator.getBrightness;
+import static image.ImageBrightnessCalculator.getGreyVal;
+import static image.RappedImage.HALF_VAL;
+import static image.RappedImage.WHITE_GREY;
+import static image.RappedImage.findClosestPowerOf2;
+
+/**
+ * A check that the brightness grids computed from the {@link SummedAreaTable} of an image agree with a naive per-pixel
+ * sum over the padded image up to float rounding, at every valid resolution.
+ * <p>
+ * Usage: {@code SummedAreaTableCheck [image file...]}; without files, generated images of odd sizes are checked.
+ */
+class SummedAreaTableCheck {
+    //region CONSTANT VARIABLES
+    /**
+     * The sizes of the generated images, as width and height pairs.
+     */
+    private static final int[][] GENERATED_SIZES = {{1000, 700}, {300, 200}, {512, 256}, {97, 131}};
+
+    /**
+     * The largest accepted difference with the naive per-pixel sum.
+     */
+    private static final double NAIVE_TOLERANCE = 1e-5;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the check.
+     *
+     * @param args the image files to check; generated images are used when there are none.
+     * @throws IOException if an image cannot be decoded.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            for (int[] size : GENERATED_SIZES) {
+                check("generated " + size[0] + " x " + size[1], noiseImage(size[0], size[1]));
+            }
+        }
+        for (String filename : args) {
+            check(filename, new Image(filename));
+        }
+        System.out.println("OK");
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Checks every valid resolution of one image, all of them computed from the same summed-area table.
+     *
+     * @param name  the name of the image, for the report.
+     * @param image the image.
+     */
+    private static void check(String name, Image image) {
+        int paddedWidth = findClosestPowerOf2(image.getWidth());
+        int paddedHeight = findClosestPowerOf2(image.getHeight());
+        int coarsest = Math.max(1, paddedWidth / paddedHeight);
+        int levels = 0;
+        double worstNaive = 0;
+        for (int resolution = coarsest; resolution <= paddedWidth; resolution *= HALF_VAL) {
+            float[][] grid = ImageToBrightnessesFacade.greyBrightnessesByResolution(image, resolution);
+            worstNaive = Math.max(worstNaive, maxDifference(grid, naive(image, resolution)));
+            levels++;
+        }
+        if (worstNaive > NAIVE_TOLERANCE) {
+            throw new AssertionError(name + ": differs from the per-pixel sum by " + worstNaive);
+        }
+        System.out.printf("%s: %d resolutions, max difference with per-pixel sum %.2e%n",
+                name, levels, worstNaive);
+    }
+
+    /**
+     * Computes the brightness grid of an image by summing the grey value of every pixel of every tile of the padded
+     * image.
+     *
+     * @param image      the image.
+     * @param resolution the resolution.
+     * @return the brightness grid.
+     */
+    private static float[][] naive(Image image, int resolution) {
+        int paddedWidth = findClosestPowerOf2(image.getWidth());
+        int paddedHeight = findClosestPowerOf2(image.getHeight());
+        int tileSize = paddedWidth / resolution;
+        int rowOffset = (paddedHeight - image.getHeight()) / HALF_VAL;
+        int colOffset = (paddedWidth - image.getWidth()) / HALF_VAL;
+        float[][] grid = new float[paddedHeight / tileSize][resolution];
+        for (int i = 0; i < grid.length; i++) {
+            for (int j = 0; j < resolution; j++) {
+                double sum = 0;
+                for (int y = i * tileSize - rowOffset; y < (i + 1) * tileSize - rowOffset; y++) {
+                    for (int x = j * tileSize - colOffset; x < (j + 1) * tileSize - colOffset; x++) {
+                        boolean inside = y >= 0 && y < image.getHeight() && x >= 0 && x < image.getWidth();
+                        sum += inside ? getGreyVal(image.getRGB(y, x)) : WHITE_GREY;
+                    }
+                }
+                grid[i][j] = getBrightness(sum, (long) tileSize * tileSize);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Finds the largest difference between two grids of the same size.
+     *
+     * @param first  the first grid.
+     * @param second the second grid.
+     * @return the largest absolute difference.
+     */
+    private static double maxDifference(float[][] first, float[][] second) {
+        double worst = 0;
+        for (int i = 0; i < first.length; i++) {
+            for (int j = 0; j < first[i].length; j++) {
+                worst = Math.max(worst, Math.abs(first[i][j] - second[i][j]));
+            }
+        }
+        return worst;
+    }
+    //endregion
+}
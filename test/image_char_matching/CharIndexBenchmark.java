@@ -0,0 +1,227 @@
+package image_char_matching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static fixtures.Fixtures.FIRST_BOX_DRAWING;
+import static fixtures.Fixtures.FIRST_PRINTABLE;
+import static fixtures.Fixtures.LAST_BOX_DRAWING;
+import static fixtures.Fixtures.LAST_PRINTABLE;
+import static fixtures.Fixtures.RUNS;
+import static fixtures.Fixtures.SEED;
+import static fixtures.Fixtures.millis;
+
+/**
+ * A benchmark of the charset index of {@link SubImgCharMatcher}, sorted primitive arrays behind immutable snapshots,
+ * against the former index: a TreeMap from normalized brightness to the list of characters of that brightness, fully
+ * re-keyed whenever the darkest or brightest character changes. Both indexes are built one character at a time in the
+ * same shuffled order, then match the same random brightness values, which must give the same characters.
+ * <p>
+ * Usage: {@code CharIndexBenchmark [lookups]}; by default 2,000,000 lookups over the printable ASCII characters and
+ * the box drawing block.
+ */
+class CharIndexBenchmark {
+    //region CONSTANT VARIABLES
+    /**
+     * The default number of brightness values matched per run.
+     */
+    private static final int DEFAULT_LOOKUPS = 2_000_000;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the optional number of lookups per run.
+     */
+    public static void main(String[] args) {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LOOKUPS;
+        String fontName = CharConverter.DEFAULT_FONT_NAME;
+        int resolution = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+        GlyphBrightnessTable table = GlyphBrightnessTable.get(fontName, resolution);
+        GlyphAtlas atlas = GlyphAtlas.get(fontName, resolution);
+        Random random = new Random(SEED);
+        char[] chars = shuffledChars(random);
+        float[] raw = new float[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            raw[i] = table.contains(chars[i]) ? table.getBrightness(chars[i]) : atlas.getBrightness(chars[i]);
+        }
+        float[] brightnesses = new float[lookups];
+        for (int i = 0; i < lookups; i++) {
+            brightnesses[i] = random.nextFloat();
+        }
+
+        long bestArrayBuild = Long.MAX_VALUE;
+        long bestTreeBuild = Long.MAX_VALUE;
+        long bestArrayLookup = Long.MAX_VALUE;
+        long bestTreeLookup = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int run = 0; run < 2 * RUNS; run++) {
+            long start = System.nanoTime();
+            SubImgCharMatcher matcher = new SubImgCharMatcher(new char[0], fontName, resolution);
+            for (char c : chars) {
+                matcher.addChar(c);
+            }
+            long arrayBuild = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            TreeMapIndex tree = new TreeMapIndex();
+            for (int i = 0; i < chars.length; i++) {
+                tree.add(chars[i], raw[i]);
+            }
+            long treeBuild = System.nanoTime() - start;
+
+            SubImgCharMatcher.Snapshot snapshot = matcher.getSnapshot();
+            char[] arrayMatches = new char[lookups];
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                arrayMatches[i] = snapshot.getCharByImageBrightness(brightnesses[i]);
+            }
+            long arrayLookup = System.nanoTime() - start;
+
+            char[] treeMatches = new char[lookups];
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                treeMatches[i] = tree.getCharByBrightness(brightnesses[i]);
+            }
+            long treeLookup = System.nanoTime() - start;
+
+            for (int i = 0; i < lookups; i++) {
+                if (arrayMatches[i] != treeMatches[i]) {
+                    throw new AssertionError(String.format("brightness %s matches '%c' in the arrays and '%c' " +
+                            "in the TreeMap", brightnesses[i], arrayMatches[i], treeMatches[i]));
+                }
+                checksum += arrayMatches[i];
+            }
+            if (run >= RUNS) {
+                bestArrayBuild = Math.min(bestArrayBuild, arrayBuild);
+                bestTreeBuild = Math.min(bestTreeBuild, treeBuild);
+                bestArrayLookup = Math.min(bestArrayLookup, arrayLookup);
+                bestTreeLookup = Math.min(bestTreeLookup, treeLookup);
+            }
+        }
+        System.out.printf("%d chars added one by one: arrays %.2f ms, TreeMap %.2f ms%n", chars.length,
+                millis(bestArrayBuild), millis(bestTreeBuild));
+        System.out.printf("%d lookups: arrays %.1f ms (%.1f ns each), TreeMap %.1f ms (%.1f ns each), " +
+                        "speedup %.1fx%n", lookups, millis(bestArrayLookup),
+                (double) bestArrayLookup / lookups, millis(bestTreeLookup),
+                (double) bestTreeLookup / lookups, (double) bestTreeLookup / bestArrayLookup);
+        System.out.println("OK, identical matches (checksum " + checksum + ")");
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Lists the characters of the benchmark in a random order, so that the darkest and brightest characters change
+     * a few times while the indexes are built.
+     *
+     * @param random the source of the order.
+     * @return the characters.
+     */
+    private static char[] shuffledChars(Random random) {
+        List<Character> list = new ArrayList<>();
+        for (char c = FIRST_PRINTABLE; c <= LAST_PRINTABLE; c++) {
+            list.add(c);
+        }
+        for (char c = FIRST_BOX_DRAWING; c <= LAST_BOX_DRAWING; c++) {
+            list.add(c);
+        }
+        Collections.shuffle(list, random);
+        char[] chars = new char[list.size()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = list.get(i);
+        }
+        return chars;
+    }
+
+    /**
+     * The former charset index: a TreeMap from the normalized brightness to the characters of that brightness, with
+     * the raw brightness of every character in a HashMap, re-keyed through a new map whenever the range of the set
+     * changes.
+     */
+    private static final class TreeMapIndex {
+        /**
+         * The characters of each normalized brightness.
+         */
+        private final TreeMap<Float, List<Character>> floatToCharsMap = new TreeMap<>();
+
+        /**
+         * The raw brightness of each character.
+         */
+        private final Map<Character, Float> rawBrightness = new HashMap<>();
+
+        /**
+         * The raw brightness of the darkest character.
+         */
+        private float min = Float.MAX_VALUE;
+
+        /**
+         * The raw brightness of the brightest character.
+         */
+        private float max = -Float.MAX_VALUE;
+
+        /**
+         * Adds a character, re-keying the whole map if it extends the range of the set.
+         *
+         * @param c          the character.
+         * @param brightness its raw brightness.
+         */
+        void add(char c, float brightness) {
+            if (rawBrightness.put(c, brightness) != null) {
+                return;
+            }
+            if (brightness < min || brightness > max) {
+                min = Math.min(min, brightness);
+                max = Math.max(max, brightness);
+                TreeMap<Float, List<Character>> rekeyed = new TreeMap<>();
+                for (List<Character> group : floatToCharsMap.values()) {
+                    rekeyed.put(normal(rawBrightness.get(group.get(0))), group);
+                }
+                floatToCharsMap.clear();
+                floatToCharsMap.putAll(rekeyed);
+            }
+            floatToCharsMap.computeIfAbsent(normal(brightness), key -> new ArrayList<>()).add(c);
+        }
+
+        /**
+         * Matches a brightness value: the characters of the closest normalized brightness, the lower one on a tie,
+         * and among them the one with the lowest ASCII value.
+         *
+         * @param brightness the brightness value.
+         * @return the matched character.
+         */
+        char getCharByBrightness(float brightness) {
+            Map.Entry<Float, List<Character>> up = floatToCharsMap.ceilingEntry(brightness);
+            Map.Entry<Float, List<Character>> down = floatToCharsMap.lowerEntry(brightness);
+            float fromUp = up != null ? Math.abs(up.getKey() - brightness) : Float.MAX_VALUE;
+            float fromDown = down != null ? Math.abs(down.getKey() - brightness) : Float.MAX_VALUE;
+            List<Character> closest = up != null && fromUp < fromDown ? up.getValue() :
+                    down.getValue();
+            char lowest = closest.get(0);
+            for (char c : closest) {
+                lowest = (char) Math.min(lowest, c);
+            }
+            return lowest;
+        }
+
+        /**
+         * Normalizes a raw brightness to the range of the set.
+         *
+         * @param brightness the raw brightness.
+         * @return the normalized brightness.
+         */
+        private float normal(float brightness) {
+            return max == min ? 0 : (brightness - min) / (max - min);
+        }
+    }
+    //endregion
+}
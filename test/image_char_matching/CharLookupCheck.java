@@ -0,0 +1,215 @@
+package image_char_matching;
+
+import java.util.List;
+import java.util.Random;
+
+import static fixtures.Fixtures.FIRST_BOX_DRAWING;
+import static fixtures.Fixtures.FIRST_PRINTABLE;
+import static fixtures.Fixtures.LAST_BOX_DRAWING;
+import static fixtures.Fixtures.LAST_PRINTABLE;
+import static fixtures.Fixtures.SEED;
+
+/**
+ * A check that the bucketed lookup of {@link SubImgCharMatcher} matches every brightness value to the same character
+ * as a linear scan of the character set: the character of the closest normalized brightness, the lower one on a tie,
+ * and among the characters of that brightness the one with the lowest ASCII value. The values probed are the bounds
+ * of every bucket and their neighbours, the normalized brightness of every character, the midpoints between
+ * consecutive ones, random values and values out of range, over several character sets, before and after changes.
+ * <p>
+ * Usage: {@code CharLookupCheck [font name [glyph resolution]]}; by default the font and resolution of CharConverter.
+ */
+class CharLookupCheck {
+    //region CONSTANT VARIABLES
+    /**
+     * The number of buckets of the lookup table, as in SubImgCharMatcher.
+     */
+    private static final int LOOKUP_BUCKETS = 4096;
+
+    /**
+     * The number of random brightness values probed per character set.
+     */
+    private static final int RANDOM_PROBES = 100_000;
+
+    /**
+     * The number of random subsets of the printable ASCII characters checked.
+     */
+    private static final int RANDOM_SUBSETS = 20;
+
+    /**
+     * The brightness values out of the range of the table. They stay close to it, since far from it the float
+     * distances to all the characters round to the same value and the linear scan can no longer tell them apart.
+     */
+    private static final float[] OUT_OF_RANGE = {-1f, -0.5f, -Float.MIN_VALUE, Math.nextUp(1f), 1.5f, 2f};
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the check.
+     *
+     * @param args the optional font name, then the optional glyph resolution.
+     */
+    public static void main(String[] args) {
+        String fontName = args.length > 0 ? args[0] : CharConverter.DEFAULT_FONT_NAME;
+        int resolution = args.length > 1 ? Integer.parseInt(args[1]) : CharConverter.DEFAULT_PIXEL_RESOLUTION;
+        GlyphBrightnessTable table = GlyphBrightnessTable.get(fontName, resolution);
+        GlyphAtlas atlas = GlyphAtlas.get(fontName, resolution);
+        Random random = new Random(SEED);
+
+        check("digits", new SubImgCharMatcher("0123456789".toCharArray(), fontName, resolution), table, atlas,
+                random);
+        check("one char", new SubImgCharMatcher(new char[]{'@'}, fontName, resolution), table, atlas, random);
+        check("two chars", new SubImgCharMatcher(new char[]{' ', '#'}, fontName, resolution), table, atlas, random);
+        SubImgCharMatcher printable = new SubImgCharMatcher(new char[0], fontName, resolution);
+        printable.addCharsInRange(FIRST_PRINTABLE, LAST_PRINTABLE);
+        check("printable ASCII", printable, table, atlas, random);
+        printable.addCharsInRange(FIRST_BOX_DRAWING, LAST_BOX_DRAWING);
+        check("printable ASCII and box drawing", printable, table, atlas, random);
+        printable.removeCharsInRange(FIRST_PRINTABLE, LAST_PRINTABLE);
+        check("box drawing", printable, table, atlas, random);
+        for (int subset = 0; subset < RANDOM_SUBSETS; subset++) {
+            SubImgCharMatcher matcher = new SubImgCharMatcher(new char[0], fontName, resolution);
+            for (char c = FIRST_PRINTABLE; c <= LAST_PRINTABLE; c++) {
+                if (random.nextBoolean()) {
+                    matcher.addChar(c);
+                }
+            }
+            if (!matcher.getSnapshot().isEmpty()) {
+                check("random subset " + subset, matcher, table, atlas, random);
+            }
+        }
+        System.out.println("OK");
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Checks one character set against the linear scan.
+     *
+     * @param name    the name of the set, for the report.
+     * @param matcher the matcher holding the set.
+     * @param table   the saved brightness of the printable ASCII characters.
+     * @param atlas   the rendered characters, for the characters outside the table.
+     * @param random  the source of the random values.
+     */
+    private static void check(String name, SubImgCharMatcher matcher, GlyphBrightnessTable table, GlyphAtlas atlas,
+                              Random random) {
+        SubImgCharMatcher.Snapshot snapshot = matcher.getSnapshot();
+        char[] chars = toArray(matcher);
+        float[] normal = normalBrightnesses(chars, table, atlas);
+        int probes = 0;
+        for (int bucket = 0; bucket <= LOOKUP_BUCKETS; bucket++) {
+            float bound = (float) bucket / LOOKUP_BUCKETS;
+            probes += probe(name, snapshot, chars, normal, bound);
+            probes += probe(name, snapshot, chars, normal, Math.nextDown(bound));
+            probes += probe(name, snapshot, chars, normal, Math.nextUp(bound));
+        }
+        for (float value : normal) {
+            probes += probe(name, snapshot, chars, normal, value);
+            probes += probe(name, snapshot, chars, normal, Math.nextDown(value));
+            probes += probe(name, snapshot, chars, normal, Math.nextUp(value));
+            for (float other : normal) {
+                if (other > value) {
+                    // Ties between two brightness values lie around their midpoint.
+                    float middle = (value + other) / 2;
+                    probes += probe(name, snapshot, chars, normal, middle);
+                    probes += probe(name, snapshot, chars, normal, Math.nextDown(middle));
+                    probes += probe(name, snapshot, chars, normal, Math.nextUp(middle));
+                }
+            }
+        }
+        for (int i = 0; i < RANDOM_PROBES; i++) {
+            probes += probe(name, snapshot, chars, normal, random.nextFloat());
+        }
+        for (float value : OUT_OF_RANGE) {
+            probes += probe(name, snapshot, chars, normal, value);
+        }
+        System.out.printf("%s: %d chars, %d values match the linear scan%n", name, chars.length, probes);
+    }
+
+    /**
+     * Matches one brightness value through the snapshot and through the linear scan, and compares the results.
+     *
+     * @param name       the name of the set, for the report.
+     * @param snapshot   the snapshot of the set.
+     * @param chars      the characters of the set.
+     * @param normal     the normalized brightness of each character.
+     * @param brightness the brightness value.
+     * @return 1, the number of values probed.
+     */
+    private static int probe(String name, SubImgCharMatcher.Snapshot snapshot, char[] chars, float[] normal,
+                             float brightness) {
+        char expected = linearScan(chars, normal, brightness);
+        char actual = snapshot.getCharByImageBrightness(brightness);
+        if (actual != expected) {
+            throw new AssertionError(String.format("%s: brightness %s (bits %08x) matches '%c' instead of '%c'",
+                    name, brightness, Float.floatToRawIntBits(brightness), actual, expected));
+        }
+        return 1;
+    }
+
+    /**
+     * Finds the character matching a brightness value by comparing it with every character of the set.
+     *
+     * @param chars      the characters of the set.
+     * @param normal     the normalized brightness of each character.
+     * @param brightness the brightness value.
+     * @return the character of the closest normalized brightness, the lower one on a tie, then the lowest one.
+     */
+    private static char linearScan(char[] chars, float[] normal, float brightness) {
+        int best = 0;
+        for (int i = 1; i < chars.length; i++) {
+            float distance = Math.abs(normal[i] - brightness);
+            float bestDistance = Math.abs(normal[best] - brightness);
+            if (distance < bestDistance || (distance == bestDistance &&
+                    (normal[i] < normal[best] || (normal[i] == normal[best] && chars[i] < chars[best])))) {
+                best = i;
+            }
+        }
+        return chars[best];
+    }
+
+    /**
+     * Computes the normalized brightness of characters as the matcher does, from the raw brightness of the saved
+     * table or of the atlas, relative to the darkest and brightest characters.
+     *
+     * @param chars the characters.
+     * @param table the saved brightness of the printable ASCII characters.
+     * @param atlas the rendered characters, for the characters outside the table.
+     * @return the normalized brightness of each character.
+     */
+    private static float[] normalBrightnesses(char[] chars, GlyphBrightnessTable table, GlyphAtlas atlas) {
+        float[] raw = new float[chars.length];
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int i = 0; i < chars.length; i++) {
+            raw[i] = table.contains(chars[i]) ? table.getBrightness(chars[i]) : atlas.getBrightness(chars[i]);
+            min = Math.min(min, raw[i]);
+            max = Math.max(max, raw[i]);
+        }
+        float[] normal = new float[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            normal[i] = max == min ? 0 : (raw[i] - min) / (max - min);
+        }
+        return normal;
+    }
+
+    /**
+     * Gets the characters of a matcher.
+     *
+     * @param matcher the matcher.
+     * @return its characters, in ascending order.
+     */
+    private static char[] toArray(SubImgCharMatcher matcher) {
+        List<Character> sorted = matcher.GetAllCharsSorted();
+        char[] chars = new char[sorted.size()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = sorted.get(i);
+        }
+        return chars;
+    }
+    //endregion
+}
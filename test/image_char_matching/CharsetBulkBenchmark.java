@@ -0,0 +1,120 @@
+package image_char_matching;
+
+import static fixtures.Fixtures.FIRST_PRINTABLE;
+import static fixtures.Fixtures.LAST_PRINTABLE;
+import static fixtures.Fixtures.RUNS;
+import static fixtures.Fixtures.millis;
+import static fixtures.Fixtures.millisSince;
+
+/**
+ * A benchmark of the bulk changes of {@link SubImgCharMatcher}, which merge a whole range into the character set in
+ * one pass, against adding and removing the same characters one at a time, which copies the set once per character.
+ * Two ranges are measured: the printable ASCII characters of {@code add all}, and a large Unicode range. The characters
+ * are rendered once before timing, so that only the changes of the set are measured, and both ways must end with the
+ * same set.
+ * <p>
+ * Usage: {@code CharsetBulkBenchmark [first last]}; the optional bounds of the large range, as hexadecimal code
+ * points, by default 0100 to 1FFF.
+ */
+class CharsetBulkBenchmark {
+    //region CONSTANT VARIABLES
+    /**
+     * The default first character of the large range.
+     */
+    private static final char DEFAULT_FIRST_UNICODE = '\u0100';
+
+    /**
+     * The default last character of the large range.
+     */
+    private static final char DEFAULT_LAST_UNICODE = '\u1FFF';
+
+    /**
+     * The radix of the code points given as arguments.
+     */
+    private static final int HEX_RADIX = 16;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the optional first and last characters of the large range, as hexadecimal code points.
+     */
+    public static void main(String[] args) {
+        char firstUnicode = args.length > 1 ? (char) Integer.parseInt(args[0], HEX_RADIX) : DEFAULT_FIRST_UNICODE;
+        char lastUnicode = args.length > 1 ? (char) Integer.parseInt(args[1], HEX_RADIX) : DEFAULT_LAST_UNICODE;
+        measure("add all (printable ASCII)", FIRST_PRINTABLE, LAST_PRINTABLE);
+        measure(String.format("range %04X-%04X", (int) firstUnicode, (int) lastUnicode), firstUnicode, lastUnicode);
+        System.out.println("OK, identical sets both ways");
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Measures adding then removing one range, in bulk and one character at a time.
+     *
+     * @param name  the name of the range, for the report.
+     * @param first the first character of the range.
+     * @param last  the last character of the range, inclusive.
+     */
+    private static void measure(String name, char first, char last) {
+        long start = System.nanoTime();
+        new SubImgCharMatcher(new char[0]).addCharsInRange(first, last);
+        double renderMillis = millisSince(start);
+        long bestBulkAdd = Long.MAX_VALUE;
+        long bestBulkRemove = Long.MAX_VALUE;
+        long bestSingleAdd = Long.MAX_VALUE;
+        long bestSingleRemove = Long.MAX_VALUE;
+        int size = 0;
+        for (int run = 0; run < 2 * RUNS; run++) {
+            SubImgCharMatcher bulk = new SubImgCharMatcher(new char[0]);
+            start = System.nanoTime();
+            bulk.addCharsInRange(first, last);
+            long bulkAdd = System.nanoTime() - start;
+
+            SubImgCharMatcher single = new SubImgCharMatcher(new char[0]);
+            start = System.nanoTime();
+            for (char c = first; c <= last; c++) {
+                single.addChar(c);
+            }
+            long singleAdd = System.nanoTime() - start;
+
+            size = bulk.GetAllCharsSorted().size();
+            if (!bulk.GetAllCharsSorted().equals(single.GetAllCharsSorted())) {
+                throw new AssertionError(name + ": the bulk add and the single adds give different sets");
+            }
+
+            start = System.nanoTime();
+            bulk.removeCharsInRange(first, last);
+            long bulkRemove = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (char c = first; c <= last; c++) {
+                single.removeChar(c);
+            }
+            long singleRemove = System.nanoTime() - start;
+
+            if (!bulk.getSnapshot().isEmpty() || !single.getSnapshot().isEmpty()) {
+                throw new AssertionError(name + ": removing the range does not empty the set");
+            }
+            if (run >= RUNS) {
+                bestBulkAdd = Math.min(bestBulkAdd, bulkAdd);
+                bestSingleAdd = Math.min(bestSingleAdd, singleAdd);
+                bestBulkRemove = Math.min(bestBulkRemove, bulkRemove);
+                bestSingleRemove = Math.min(bestSingleRemove, singleRemove);
+            }
+        }
+        System.out.printf("%s: %d chars, first rendering %.1f ms%n", name, size, renderMillis);
+        System.out.printf("  add:    bulk %.2f ms, one by one %.2f ms, speedup %.1fx%n",
+                millis(bestBulkAdd), millis(bestSingleAdd),
+                (double) bestSingleAdd / bestBulkAdd);
+        System.out.printf("  remove: bulk %.2f ms, one by one %.2f ms, speedup %.1fx%n",
+                millis(bestBulkRemove), millis(bestSingleRemove),
+                (double) bestSingleRemove / bestBulkRemove);
+    }
+    //endregion
+}
@@ -0,0 +1,294 @@
+package image_char_matching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fixtures.Fixtures.SEED;
+import static fixtures.Fixtures.millisSince;
+
+/**
+ * A stress check of a {@link SubImgCharMatcher} shared between threads. Writer threads add and remove characters, one
+ * at a time, in bulk and by range, each in its own block of characters, so that their changes commute; the blocks lie
+ * outside the saved table, so their first additions also render characters concurrently. Meanwhile reader threads
+ * pin snapshots and match brightness values and tile shapes against them.
+ * <p>
+ * The check fails if any thread throws, if a reader gets a character that was never in the set, if a pinned snapshot
+ * matches a value differently the second time, after the writers changed the set, or if the final set differs from
+ * the union of the sets each writer ended with, which would reveal a lost update.
+ * <p>
+ * Usage: {@code MatcherStressCheck [writers readers [changes per writer]]}; by default 4 writers, 4 readers and 2000
+ * changes per writer.
+ */
+class MatcherStressCheck {
+    //region CONSTANT VARIABLES
+    /**
+     * The default number of writer threads.
+     */
+    private static final int DEFAULT_WRITERS = 4;
+
+    /**
+     * The default number of reader threads.
+     */
+    private static final int DEFAULT_READERS = 4;
+
+    /**
+     * The default number of changes made by each writer.
+     */
+    private static final int DEFAULT_CHANGES = 2000;
+
+    /**
+     * The characters that are never removed, so that the set is never empty.
+     */
+    private static final char[] BASE_CHARS = "0123456789".toCharArray();
+
+    /**
+     * The first character of the block of the first writer.
+     */
+    private static final char FIRST_BLOCK_CHAR = '\u0400';
+
+    /**
+     * The number of characters in the block of each writer.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * The number of brightness values a reader matches against each snapshot.
+     */
+    private static final int VALUES_PER_SNAPSHOT = 256;
+
+    /**
+     * The number of kinds of change a writer makes: one character, several characters, or a range, each added or
+     * removed.
+     */
+    private static final int CHANGE_KINDS = 6;
+
+    /**
+     * The number of longs holding a tile mask.
+     */
+    private static final int MASK_WORDS = GlyphMasks.MASK_WORDS;
+    //endregion
+
+
+    //region API
+
+    /**
+     * Runs the check.
+     *
+     * @param args the optional numbers of writers and readers, then the optional number of changes per writer.
+     * @throws InterruptedException if the check is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int writers = args.length > 1 ? Integer.parseInt(args[0]) : DEFAULT_WRITERS;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_READERS;
+        int changes = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHANGES;
+        SubImgCharMatcher matcher = new SubImgCharMatcher(BASE_CHARS);
+        boolean[][] finalStates = new boolean[writers][];
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong lookups = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    finalStates[writer] = write(matcher, blockStart(writer), changes, new Random(SEED + writer));
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            long seed = SEED + writers + r;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    read(matcher, writers, writing, lookups, new Random(seed));
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        long startNanos = System.nanoTime();
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (int i = 0; i < writers; i++) {
+            threads.get(i).join();
+        }
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(failures.size() + " thread(s) failed");
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+        checkFinalSet(matcher, finalStates);
+        System.out.printf("%d writers x %d changes, %d readers: %d lookups in %.0f ms, %d chars left%n", writers,
+                changes, readers, lookups.get(), millisSince(startNanos),
+                matcher.GetAllCharsSorted().size());
+        System.out.println("OK");
+    }
+    //endregion
+
+
+    //region PRIVATE METHODS
+
+    /**
+     * Makes random changes to the block of one writer, tracking which of its characters are in the set.
+     *
+     * @param matcher the shared matcher.
+     * @param first   the first character of the block.
+     * @param changes the number of changes.
+     * @param random  the source of the changes.
+     * @return whether each character of the block is in the set at the end.
+     */
+    private static boolean[] write(SubImgCharMatcher matcher, char first, int changes, Random random) {
+        boolean[] inSet = new boolean[BLOCK_SIZE];
+        for (int change = 0; change < changes; change++) {
+            int kind = random.nextInt(CHANGE_KINDS);
+            boolean add = kind % 2 == 0;
+            switch (kind / 2) {
+                case 0 -> {
+                    int index = random.nextInt(BLOCK_SIZE);
+                    if (add) {
+                        matcher.addChar((char) (first + index));
+                    } else {
+                        matcher.removeChar((char) (first + index));
+                    }
+                    inSet[index] = add;
+                }
+                case 1 -> {
+                    char[] chars = new char[random.nextInt(BLOCK_SIZE) + 1];
+                    for (int i = 0; i < chars.length; i++) {
+                        int index = random.nextInt(BLOCK_SIZE);
+                        chars[i] = (char) (first + index);
+                        inSet[index] = add;
+                    }
+                    if (add) {
+                        matcher.addChars(chars);
+                    } else {
+                        matcher.removeChars(chars);
+                    }
+                }
+                default -> {
+                    int from = random.nextInt(BLOCK_SIZE);
+                    int to = from + random.nextInt(BLOCK_SIZE - from);
+                    if (add) {
+                        matcher.addCharsInRange((char) (first + from), (char) (first + to));
+                    } else {
+                        matcher.removeCharsInRange((char) (first + from), (char) (first + to));
+                    }
+                    for (int index = from; index <= to; index++) {
+                        inSet[index] = add;
+                    }
+                }
+            }
+        }
+        return inSet;
+    }
+
+    /**
+     * Matches values against pinned snapshots while the writers run, checking that every matched character may be
+     * in the set and that a snapshot matches the same way twice.
+     *
+     * @param matcher the shared matcher.
+     * @param writers the number of writers.
+     * @param writing whether the writers are still running.
+     * @param lookups the counter of the values matched.
+     * @param random  the source of the values.
+     */
+    private static void read(SubImgCharMatcher matcher, int writers, AtomicBoolean writing, AtomicLong lookups,
+                             Random random) {
+        float[] brightnesses = new float[VALUES_PER_SNAPSHOT];
+        long[] tileMasks = new long[VALUES_PER_SNAPSHOT * MASK_WORDS];
+        char[] first = new char[VALUES_PER_SNAPSHOT];
+        char[] firstShapes = new char[VALUES_PER_SNAPSHOT];
+        do {
+            for (int i = 0; i < VALUES_PER_SNAPSHOT; i++) {
+                brightnesses[i] = random.nextFloat();
+            }
+            for (int i = 0; i < tileMasks.length; i++) {
+                tileMasks[i] = random.nextLong();
+            }
+            SubImgCharMatcher.Snapshot snapshot = matcher.getSnapshot();
+            for (int i = 0; i < VALUES_PER_SNAPSHOT; i++) {
+                first[i] = snapshot.getCharByImageBrightness(brightnesses[i]);
+                firstShapes[i] = snapshot.getCharByShape(brightnesses[i], tileMasks, i * MASK_WORDS);
+                checkKnown(first[i], writers);
+                checkKnown(firstShapes[i], writers);
+            }
+            // Let the writers change the set before matching against the same snapshot again.
+            Thread.yield();
+            matcher.getCharByImageBrightness(brightnesses[0]);
+            for (int i = 0; i < VALUES_PER_SNAPSHOT; i++) {
+                if (snapshot.getCharByImageBrightness(brightnesses[i]) != first[i] ||
+                        snapshot.getCharByShape(brightnesses[i], tileMasks, i * MASK_WORDS) != firstShapes[i]) {
+                    throw new AssertionError("A snapshot matched brightness " + brightnesses[i] +
+                            " differently the second time");
+                }
+            }
+            lookups.addAndGet(4L * VALUES_PER_SNAPSHOT + 1);
+        } while (writing.get());
+    }
+
+    /**
+     * Checks that a matched character is one that may be in the set: a base character or a character of a block.
+     *
+     * @param c       the matched character.
+     * @param writers the number of writers.
+     */
+    private static void checkKnown(char c, int writers) {
+        for (char base : BASE_CHARS) {
+            if (c == base) {
+                return;
+            }
+        }
+        if (c < FIRST_BLOCK_CHAR || c >= blockStart(writers)) {
+            throw new AssertionError(String.format("Matched U+%04X, which was never in the set", (int) c));
+        }
+    }
+
+    /**
+     * Checks that the final set is the base characters and the characters each writer left in the set.
+     *
+     * @param matcher     the shared matcher.
+     * @param finalStates whether each character of each block is in the set at the end.
+     */
+    private static void checkFinalSet(SubImgCharMatcher matcher, boolean[][] finalStates) {
+        List<Character> expected = new ArrayList<>();
+        for (char c : BASE_CHARS) {
+            expected.add(c);
+        }
+        for (int writer = 0; writer < finalStates.length; writer++) {
+            for (int index = 0; index < BLOCK_SIZE; index++) {
+                if (finalStates[writer][index]) {
+                    expected.add((char) (blockStart(writer) + index));
+                }
+            }
+        }
+        List<Character> actual = matcher.GetAllCharsSorted();
+        if (!actual.equals(expected)) {
+            throw new AssertionError("Lost update: the final set has " + actual.size() + " chars, " +
+                    expected.size() + " expected");
+        }
+    }
+
+    /**
+     * Gets the first character of the block of a writer.
+     *
+     * @param writer the index of the writer.
+     * @return the first character of its block.
+     */
+    private static char blockStart(int writer) {
+        return (char) (FIRST_BLOCK_CHAR + writer * BLOCK_SIZE);
+    }
+    //endregion
+}